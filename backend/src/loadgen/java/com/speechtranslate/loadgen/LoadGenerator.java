@@ -0,0 +1,258 @@
+package com.speechtranslate.loadgen;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.speechtranslate.websocket.AudioFrame;
+import com.speechtranslate.websocket.MultiplexedFrame;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * 负载生成器
+ * 模拟会议室设备：每台设备有若干麦克风，分别以独立连接和多路复用连接两种方式发送静音PCM，
+ * 并对比服务端的连接数、心跳线程数和堆内存占用。每次采样前通过 POST /api/debug/gc 触发一次完整GC，
+ * 服务端需开启 debug.gc-endpoint.enabled，否则退回使用最近一次GC后的堆内存占用。
+ *
+ * 负载生成器不打包进服务端jar，通过 loadgen profile 运行:
+ * mvn -Ploadgen test-compile exec:java -Dexec.args="--url=ws://localhost:8080/speech --boxes=4 --channels=8"
+ */
+public class LoadGenerator {
+
+    // 每帧4096个16位采样，16kHz下约256毫秒
+    private static final int SAMPLES_PER_FRAME = 4096;
+    private static final long FRAME_INTERVAL_MS = SAMPLES_PER_FRAME * 1000L / 16000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String url;
+    private final String metricsUrl;
+    private final String gcUrl;
+    private final int boxes;
+    private final int channels;
+    private final int seconds;
+    private final OkHttpClient client;
+
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public LoadGenerator(String url, int boxes, int channels, int seconds) {
+        this.url = url;
+        String baseUrl = url.replaceFirst("^ws", "http").replaceFirst("/speech$", "");
+        this.metricsUrl = baseUrl + "/api/metrics/connections";
+        this.gcUrl = baseUrl + "/api/debug/gc";
+        this.boxes = boxes;
+        this.channels = channels;
+        this.seconds = seconds;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(4096);
+        dispatcher.setMaxRequestsPerHost(4096);
+        this.client = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        LoadGenerator generator = new LoadGenerator(
+                options.getOrDefault("url", "ws://localhost:8080/speech"),
+                Integer.parseInt(options.getOrDefault("boxes", "4")),
+                Integer.parseInt(options.getOrDefault("channels", "8")),
+                Integer.parseInt(options.getOrDefault("seconds", "30")));
+        String mode = options.getOrDefault("mode", "both");
+        try {
+            PhaseResult separate = null;
+            PhaseResult multiplexed = null;
+            if (!"mux".equals(mode)) {
+                separate = generator.runPhase(false);
+            }
+            if (!"separate".equals(mode)) {
+                multiplexed = generator.runPhase(true);
+            }
+            if (separate != null && multiplexed != null) {
+                System.out.println("=== 多路复用节省 ===");
+                System.out.printf("客户端连接: %d -> %d%n", separate.connections, multiplexed.connections);
+                printSaving("服务端连接增量", separate.serverConnectionDelta, multiplexed.serverConnectionDelta);
+                printSaving("服务端心跳线程增量", separate.heartbeatThreadDelta, multiplexed.heartbeatThreadDelta);
+                printSaving("服务端GC后堆内存增量(字节)", separate.heapDelta, multiplexed.heapDelta);
+                printSaving("发送消息数", separate.messages, multiplexed.messages);
+            }
+        } finally {
+            generator.client.dispatcher().executorService().shutdown();
+            generator.client.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * 运行一个阶段：建立连接，按实时速率发送音频，采集服务端指标后关闭连接
+     */
+    private PhaseResult runPhase(boolean multiplexed) throws Exception {
+        messagesSent.set(0);
+        bytesSent.set(0);
+        messagesReceived.set(0);
+        failures.set(0);
+        Map<String, Long> before = fetchServerStats();
+
+        int connectionCount = multiplexed ? boxes : boxes * channels;
+        CountDownLatch opened = new CountDownLatch(connectionCount);
+        List<WebSocket> sockets = new ArrayList<>();
+        long connectStart = System.currentTimeMillis();
+        for (int i = 0; i < connectionCount; i++) {
+            sockets.add(client.newWebSocket(new Request.Builder().url(url).build(), listener(opened)));
+        }
+        opened.await(30, TimeUnit.SECONDS);
+        long connectMillis = System.currentTimeMillis() - connectStart;
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long[] sequence = new long[connectionCount * channels];
+        scheduler.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < sockets.size(); i++) {
+                byte[] payload;
+                if (multiplexed) {
+                    int[] channelIds = new int[channels];
+                    byte[][] frames = new byte[channels][];
+                    for (int c = 0; c < channels; c++) {
+                        channelIds[c] = c;
+                        frames[c] = silentFrame(sequence[i * channels + c]++, now);
+                    }
+                    payload = MultiplexedFrame.encode(channelIds, frames);
+                } else {
+                    payload = silentFrame(sequence[i]++, now);
+                }
+                if (sockets.get(i).send(ByteString.of(payload))) {
+                    messagesSent.incrementAndGet();
+                    bytesSent.addAndGet(payload.length);
+                }
+            }
+        }, 0, FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(seconds * 1000L);
+        Map<String, Long> during = fetchServerStats();
+        scheduler.shutdownNow();
+        for (WebSocket socket : sockets) {
+            socket.close(1000, "load test finished");
+        }
+
+        PhaseResult result = new PhaseResult();
+        result.connections = connectionCount;
+        result.messages = messagesSent.get();
+        result.serverConnectionDelta = delta(before, during, "connections");
+        result.heartbeatThreadDelta = delta(before, during, "heartbeatThreads");
+        result.heapDelta = delta(before, during, "heapUsedBytes");
+
+        System.out.printf("=== %s: %d 台设备 x %d 通道 ===%n", multiplexed ? "多路复用" : "独立连接", boxes, channels);
+        System.out.printf("客户端连接: %d (建立耗时 %dms, 失败 %d)%n", connectionCount, connectMillis, failures.get());
+        System.out.printf("发送: %d 条消息, %d 字节; 接收: %d 条消息%n",
+                messagesSent.get(), bytesSent.get(), messagesReceived.get());
+        System.out.printf("服务端: 连接 +%d, 心跳线程 +%d, GC后堆内存 +%d 字节%n",
+                result.serverConnectionDelta, result.heartbeatThreadDelta, result.heapDelta);
+
+        // 等待服务端清理连接，避免影响下一阶段的基线
+        Thread.sleep(5000);
+        return result;
+    }
+
+    private WebSocketListener listener(CountDownLatch opened) {
+        return new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                opened.countDown();
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                messagesReceived.incrementAndGet();
+                if (text.startsWith("ping:")) {
+                    webSocket.send("pong:" + text.substring(5) + ":" + System.currentTimeMillis());
+                } else if ("ping".equals(text)) {
+                    webSocket.send("pong");
+                }
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                failures.incrementAndGet();
+                opened.countDown();
+            }
+        };
+    }
+
+    /**
+     * 生成一帧带帧头的静音PCM
+     */
+    private static byte[] silentFrame(long sequence, long captureTimestamp) {
+        ByteBuffer buffer = ByteBuffer.allocate(AudioFrame.HEADER_SIZE + SAMPLES_PER_FRAME * 2);
+        buffer.put(new byte[] {'S', 'T', 'F', '1'});
+        buffer.putInt((int) sequence);
+        buffer.putDouble(captureTimestamp);
+        return buffer.array();
+    }
+
+    /**
+     * 先触发服务端GC再采集连接指标，使两次采样的堆内存可以直接比较
+     */
+    private Map<String, Long> fetchServerStats() {
+        Map<String, Long> gc = fetch(new Request.Builder().url(gcUrl)
+                .post(RequestBody.create(null, new byte[0])).build());
+        Map<String, Long> stats = fetch(new Request.Builder().url(metricsUrl).build());
+        if (gc.containsKey("heapUsedBytes")) {
+            stats.put("heapUsedBytes", gc.get("heapUsedBytes"));
+        } else {
+            System.err.println("服务端未开启 debug.gc-endpoint.enabled，堆内存增量受GC时机影响");
+            stats.put("heapUsedBytes", stats.getOrDefault("heapUsedAfterGcBytes", 0L));
+        }
+        return stats;
+    }
+
+    private Map<String, Long> fetch(Request request) {
+        try (Response response = client.newCall(request).execute()) {
+            if (response.isSuccessful() && response.body() != null) {
+                return objectMapper.readValue(response.body().string(), new TypeReference<Map<String, Long>>() {});
+            }
+        } catch (Exception e) {
+            System.err.println("获取服务端指标失败: " + e.getMessage());
+        }
+        return new HashMap<>();
+    }
+
+    private static long delta(Map<String, Long> before, Map<String, Long> after, String key) {
+        return after.getOrDefault(key, 0L) - before.getOrDefault(key, 0L);
+    }
+
+    private static void printSaving(String label, long separate, long multiplexed) {
+        double saving = separate > 0 ? 100.0 * (separate - multiplexed) / separate : 0;
+        System.out.printf("%s: %d -> %d (节省 %.1f%%)%n", label, separate, multiplexed, saving);
+    }
+
+    private static final class PhaseResult {
+        private int connections;
+        private long messages;
+        private long serverConnectionDelta;
+        private long heartbeatThreadDelta;
+        private long heapDelta;
+    }
+}
@@ -8,21 +8,27 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 import com.speechtranslate.websocket.SpeechWebSocketHandler;
+import com.speechtranslate.websocket.TranscriptSubscriptionHandler;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final SpeechWebSocketHandler speechWebSocketHandler;
+    private final TranscriptSubscriptionHandler transcriptSubscriptionHandler;
 
-    public WebSocketConfig(SpeechWebSocketHandler speechWebSocketHandler) {
+    public WebSocketConfig(SpeechWebSocketHandler speechWebSocketHandler,
+                           TranscriptSubscriptionHandler transcriptSubscriptionHandler) {
         this.speechWebSocketHandler = speechWebSocketHandler;
+        this.transcriptSubscriptionHandler = transcriptSubscriptionHandler;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(speechWebSocketHandler, "/speech")
                 .setAllowedOrigins("*"); // 在生产环境中应该限制为特定域名
+        registry.addHandler(transcriptSubscriptionHandler, "/speech/subscribe")
+                .setAllowedOrigins("*");
     }
 
     @Bean
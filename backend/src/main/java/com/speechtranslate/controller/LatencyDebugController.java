@@ -0,0 +1,37 @@
+package com.speechtranslate.controller;
+
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.speechtranslate.service.FrameLatencyTracker;
+
+/**
+ * 延迟调试控制器
+ * 查看单个会话最近音频帧在各阶段的时间线
+ */
+@Controller
+@RequestMapping("/api/debug")
+public class LatencyDebugController {
+
+    private final FrameLatencyTracker frameLatencyTracker;
+
+    public LatencyDebugController(FrameLatencyTracker frameLatencyTracker) {
+        this.frameLatencyTracker = frameLatencyTracker;
+    }
+
+    /**
+     * 会话的帧延迟时间线，时间均已换算为服务端时钟
+     */
+    @GetMapping("/latency/{sessionId}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> latency(@PathVariable String sessionId) {
+        Map<String, Object> timeline = frameLatencyTracker.getTimeline(sessionId);
+        return timeline != null ? ResponseEntity.ok(timeline) : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.speechtranslate.controller;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * 内存调试控制器
+ * 触发一次完整GC后返回堆内存占用，使负载测试的内存采样不受GC时机影响；
+ * 会暂停整个JVM，默认关闭，仅在测试环境通过 debug.gc-endpoint.enabled 开启
+ */
+@Controller
+@RequestMapping("/api/debug")
+@ConditionalOnProperty(name = "debug.gc-endpoint.enabled", havingValue = "true")
+public class MemoryDebugController {
+
+    /**
+     * 触发GC并返回GC后的堆内存占用（字节）
+     */
+    @PostMapping("/gc")
+    @ResponseBody
+    public Map<String, Long> gc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        long start = System.currentTimeMillis();
+        memory.gc();
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("heapUsedBeforeBytes", before);
+        result.put("heapUsedBytes", memory.getHeapMemoryUsage().getUsed());
+        result.put("gcMillis", System.currentTimeMillis() - start);
+        return result;
+    }
+}
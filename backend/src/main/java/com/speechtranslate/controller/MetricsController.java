@@ -0,0 +1,98 @@
+package com.speechtranslate.controller;
+
+import java.util.Map;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.speechtranslate.service.FrameLatencyTracker;
+import com.speechtranslate.service.SpeechToTextService;
+import com.speechtranslate.service.TranscriptionRetentionService;
+import com.speechtranslate.service.TranslationService;
+import com.speechtranslate.websocket.SpeechWebSocketHandler;
+import com.speechtranslate.websocket.TranscriptBroadcaster;
+
+/**
+ * 运行指标控制器
+ * 提供本实例的会话内存等指标，供监控采集
+ */
+@Controller
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    private final SpeechToTextService speechToTextService;
+    private final TranscriptBroadcaster transcriptBroadcaster;
+    private final TranslationService translationService;
+    private final TranscriptionRetentionService transcriptionRetentionService;
+    private final FrameLatencyTracker frameLatencyTracker;
+    private final SpeechWebSocketHandler speechWebSocketHandler;
+
+    public MetricsController(SpeechToTextService speechToTextService, TranscriptBroadcaster transcriptBroadcaster,
+                             TranslationService translationService,
+                             TranscriptionRetentionService transcriptionRetentionService,
+                             FrameLatencyTracker frameLatencyTracker,
+                             SpeechWebSocketHandler speechWebSocketHandler) {
+        this.speechToTextService = speechToTextService;
+        this.transcriptBroadcaster = transcriptBroadcaster;
+        this.translationService = translationService;
+        this.transcriptionRetentionService = transcriptionRetentionService;
+        this.frameLatencyTracker = frameLatencyTracker;
+        this.speechWebSocketHandler = speechWebSocketHandler;
+    }
+
+    /**
+     * 会话转写的驻留与溢出字节数
+     */
+    @GetMapping("/sessions")
+    @ResponseBody
+    public Map<String, Long> sessions() {
+        return speechToTextService.getSessionMemoryStats();
+    }
+
+    /**
+     * 每个说话人会话的订阅者数量
+     */
+    @GetMapping("/subscriptions")
+    @ResponseBody
+    public Map<String, Integer> subscriptions() {
+        return transcriptBroadcaster.getSubscriberCounts();
+    }
+
+    /**
+     * 翻译缓存命中与上游请求统计
+     */
+    @GetMapping("/translation")
+    @ResponseBody
+    public Map<String, Object> translation() {
+        return translationService.getTranslationStats();
+    }
+
+    /**
+     * 分区保留与会话压缩任务的进度
+     */
+    @GetMapping("/retention")
+    @ResponseBody
+    public Map<String, Object> retention() {
+        return transcriptionRetentionService.getRetentionStats();
+    }
+
+    /**
+     * 音频帧各阶段的延迟直方图
+     */
+    @GetMapping("/latency")
+    @ResponseBody
+    public Map<String, Object> latency() {
+        return frameLatencyTracker.getHistograms();
+    }
+
+    /**
+     * 语音连接、多路复用通道与堆内存占用
+     */
+    @GetMapping("/connections")
+    @ResponseBody
+    public Map<String, Long> connections() {
+        return speechWebSocketHandler.getConnectionStats();
+    }
+}
@@ -0,0 +1,105 @@
+package com.speechtranslate.entity;
+
+import java.time.LocalDateTime;
+import javax.persistence.*;
+
+@Entity
+@Table(name = "transcription_archives")
+public class TranscriptionArchive {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "session_id", nullable = false)
+    private String sessionId;
+
+    @Column(name = "record_count", nullable = false)
+    private int recordCount;
+
+    @Column(name = "first_created_at", nullable = false)
+    private LocalDateTime firstCreatedAt;
+
+    @Column(name = "last_created_at", nullable = false)
+    private LocalDateTime lastCreatedAt;
+
+    // GZIP压缩后的转写文本，每条记录一行
+    @Lob
+    @Column(name = "compressed_text")
+    private byte[] compressedText;
+
+    // 压缩前的文本字节数
+    @Column(name = "original_bytes", nullable = false)
+    private long originalBytes;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public TranscriptionArchive() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(int recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public LocalDateTime getFirstCreatedAt() {
+        return firstCreatedAt;
+    }
+
+    public void setFirstCreatedAt(LocalDateTime firstCreatedAt) {
+        this.firstCreatedAt = firstCreatedAt;
+    }
+
+    public LocalDateTime getLastCreatedAt() {
+        return lastCreatedAt;
+    }
+
+    public void setLastCreatedAt(LocalDateTime lastCreatedAt) {
+        this.lastCreatedAt = lastCreatedAt;
+    }
+
+    public byte[] getCompressedText() {
+        return compressedText;
+    }
+
+    public void setCompressedText(byte[] compressedText) {
+        this.compressedText = compressedText;
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    public void setOriginalBytes(long originalBytes) {
+        this.originalBytes = originalBytes;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
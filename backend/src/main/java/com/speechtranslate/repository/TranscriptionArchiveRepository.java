@@ -0,0 +1,9 @@
+package com.speechtranslate.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import com.speechtranslate.entity.TranscriptionArchive;
+
+@Repository
+public interface TranscriptionArchiveRepository extends JpaRepository<TranscriptionArchive, Long> {
+}
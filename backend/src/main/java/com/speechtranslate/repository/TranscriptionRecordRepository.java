@@ -1,12 +1,41 @@
 package com.speechtranslate.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.speechtranslate.entity.TranscriptionRecord;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface TranscriptionRecordRepository extends JpaRepository<TranscriptionRecord, Long> {
     List<TranscriptionRecord> findBySessionId(String sessionId);
     List<TranscriptionRecord> findBySessionIdOrderByCreatedAtDesc(String sessionId);
-}
\ No newline at end of file
+    boolean existsBySessionIdAndCreatedAtGreaterThanEqual(String sessionId, LocalDateTime cutoff);
+
+    // 查找所有记录都早于截止时间的会话，仍有新记录的会话不会占用结果页
+    @Query("select r.sessionId from TranscriptionRecord r group by r.sessionId having max(r.createdAt) < :cutoff")
+    List<String> findSessionIdsWithRecordsBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    // 分页读取会话在截止时间前的文本，只查询压缩需要的列，不加载 audio_data
+    @Query("select r.createdAt as createdAt, r.transcriptionText as transcriptionText from TranscriptionRecord r "
+            + "where r.sessionId = :sessionId and r.createdAt < :cutoff order by r.createdAt asc, r.id asc")
+    List<TextView> findTextBySessionIdBefore(@Param("sessionId") String sessionId,
+                                             @Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    // 按会话批量删除，单条DELETE语句完成
+    @Modifying
+    @Query("delete from TranscriptionRecord r where r.sessionId = :sessionId and r.createdAt < :cutoff")
+    int deleteBySessionIdBefore(@Param("sessionId") String sessionId, @Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * 压缩时使用的文本投影
+     */
+    interface TextView {
+        LocalDateTime getCreatedAt();
+        String getTranscriptionText();
+    }
+}
@@ -0,0 +1,52 @@
+package com.speechtranslate.service;
+
+/**
+ * 多路复用通道键
+ * 一个WebSocket连接上的每个音频通道使用 "{会话ID}.{通道号}" 作为独立的转写会话ID，
+ * 对应各自的 SessionContext、识别流和延迟时间线
+ */
+public final class ChannelKeys {
+
+    private static final char SEPARATOR = '.';
+
+    private ChannelKeys() {
+    }
+
+    /**
+     * 生成通道的会话键
+     */
+    public static String of(String sessionId, int channel) {
+        return sessionId + SEPARATOR + channel;
+    }
+
+    /**
+     * 获取键所属的连接会话ID，普通会话返回自身
+     */
+    public static String parentSessionId(String key) {
+        int index = key.lastIndexOf(SEPARATOR);
+        return index > 0 && isChannel(key.substring(index + 1)) ? key.substring(0, index) : key;
+    }
+
+    /**
+     * 获取键的通道号，普通会话返回-1
+     */
+    public static int channel(String key) {
+        int index = key.lastIndexOf(SEPARATOR);
+        if (index > 0 && isChannel(key.substring(index + 1))) {
+            return Integer.parseInt(key.substring(index + 1));
+        }
+        return -1;
+    }
+
+    private static boolean isChannel(String suffix) {
+        if (suffix.isEmpty() || suffix.length() > 5) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (!Character.isDigit(suffix.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
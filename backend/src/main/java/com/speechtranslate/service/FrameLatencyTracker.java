@@ -0,0 +1,334 @@
+package com.speechtranslate.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 音频帧延迟追踪
+ * 记录每一帧在 采集 -> 接收 -> 发送到识别服务 -> 收到识别结果 各阶段的时间，
+ * 按会话保留最近的时间线，并汇总为全局直方图。客户端时钟偏移通过 ping/pong 估算，
+ * 多路复用连接的各通道共用所属连接的时钟偏移。
+ * 识别结果只覆盖识别服务已处理的音频，按发送的累计字节数（16kHz 16位单声道PCM，每毫秒32字节）
+ * 换算出结果覆盖到的最后一帧。
+ */
+@Component
+public class FrameLatencyTracker {
+
+    // 16kHz 16位单声道PCM每毫秒的字节数
+    private static final long PCM_BYTES_PER_MS = 16000 * 2 / 1000;
+
+    // 客户端采集 -> 服务端接收（已做时钟偏移校正）
+    private final LatencyHistogram ingestHistogram = new LatencyHistogram();
+    // 服务端接收 -> 发送到识别服务
+    private final LatencyHistogram handlerHistogram = new LatencyHistogram();
+    // 发送到识别服务 -> 首个覆盖该帧的识别结果
+    private final LatencyHistogram providerHistogram = new LatencyHistogram();
+    // 客户端采集 -> 首个覆盖该帧的识别结果
+    private final LatencyHistogram endToEndHistogram = new LatencyHistogram();
+
+    private final Map<String, SessionTimeline> timelines = new ConcurrentHashMap<>();
+
+    // 每个会话保留的帧数
+    @Value("${latency.timeline-size:512}")
+    private int timelineSize;
+
+    /**
+     * 记录一帧被服务端接收
+     *
+     * @param sessionId 会话ID
+     * @param sequence 客户端帧序号，小于0时由服务端分配
+     * @param captureTimestamp 客户端采集时间戳，未知时小于0
+     * @param bytes 音频字节数
+     * @return 该帧的序号
+     */
+    public long markIngest(String sessionId, long sequence, long captureTimestamp, int bytes) {
+        long now = System.currentTimeMillis();
+        SessionTimeline timeline = timeline(sessionId);
+        synchronized (timeline) {
+            long seq = sequence >= 0 ? sequence : timeline.nextServerSequence++;
+            FrameTrace trace = new FrameTrace(seq, captureTimestamp, now, bytes);
+            timeline.traces.addLast(trace);
+            while (timeline.traces.size() > timelineSize) {
+                timeline.traces.pollFirst();
+            }
+            if (captureTimestamp >= 0) {
+                timeline.clientTimestamps = true;
+                String parentId = ChannelKeys.parentSessionId(sessionId);
+                if (!parentId.equals(sessionId)) {
+                    timeline(parentId).clientTimestamps = true;
+                }
+                if (timeline.hasClockOffset) {
+                    ingestHistogram.record(now - toServerTime(timeline, captureTimestamp));
+                }
+            }
+            return seq;
+        }
+    }
+
+    /**
+     * 记录识别服务开始了新的音频流，之后结果中的已处理时长从该流的第一帧算起
+     */
+    public void markStreamStart(String sessionId) {
+        SessionTimeline timeline = timeline(sessionId);
+        synchronized (timeline) {
+            timeline.streamStartOffset = timeline.sentBytes;
+        }
+    }
+
+    /**
+     * 记录音频已发送到识别服务
+     *
+     * @param sequence 帧序号，小于0时只累计字节数
+     * @param bytes 发送的音频字节数
+     */
+    public void markSent(String sessionId, long sequence, int bytes) {
+        long now = System.currentTimeMillis();
+        SessionTimeline timeline = timeline(sessionId);
+        synchronized (timeline) {
+            timeline.sentBytes += bytes;
+            FrameTrace trace = sequence >= 0 ? find(timeline, sequence) : null;
+            if (trace != null && trace.sentAt == 0) {
+                trace.sentAt = now;
+                trace.endOffset = timeline.sentBytes;
+                handlerHistogram.record(now - trace.receivedAt);
+                timeline.newestSentSequence = Math.max(timeline.newestSentSequence, sequence);
+            }
+        }
+    }
+
+    /**
+     * 记录收到一条识别结果，该结果覆盖当前音频流中已处理时长以内的帧
+     *
+     * @param processedMs 识别服务在当前音频流中已处理的音频时长（毫秒）
+     * @return 结果覆盖的最新帧序号，尚无被覆盖的帧时返回-1
+     */
+    public long markResult(String sessionId, long processedMs) {
+        long now = System.currentTimeMillis();
+        SessionTimeline timeline = timelines.get(sessionId);
+        if (timeline == null) {
+            return -1;
+        }
+        synchronized (timeline) {
+            long coveredOffset = timeline.streamStartOffset + processedMs * PCM_BYTES_PER_MS;
+            Iterator<FrameTrace> iterator = timeline.traces.descendingIterator();
+            while (iterator.hasNext()) {
+                FrameTrace trace = iterator.next();
+                if (trace.sentAt == 0 || trace.endOffset > coveredOffset) {
+                    continue;
+                }
+                // 已有结果的帧或上一个音频流中的帧之前都无需再标记
+                if (trace.resultAt != 0 || trace.endOffset <= timeline.streamStartOffset) {
+                    break;
+                }
+                timeline.newestResultSequence = Math.max(timeline.newestResultSequence, trace.sequence);
+                trace.resultAt = now;
+                providerHistogram.record(now - trace.sentAt);
+                if (trace.captureTimestamp >= 0 && timeline.hasClockOffset) {
+                    endToEndHistogram.record(now - toServerTime(timeline, trace.captureTimestamp));
+                }
+            }
+            return timeline.newestResultSequence;
+        }
+    }
+
+    /**
+     * 获取最近一条识别结果覆盖的最新帧序号
+     */
+    public long getNewestResultFrame(String sessionId) {
+        SessionTimeline timeline = timelines.get(sessionId);
+        if (timeline == null) {
+            return -1;
+        }
+        synchronized (timeline) {
+            return timeline.newestResultSequence;
+        }
+    }
+
+    /**
+     * 客户端是否发送带时间戳的帧，只有这类客户端才会响应带时间戳的ping
+     */
+    public boolean supportsClockSync(String sessionId) {
+        SessionTimeline timeline = timelines.get(sessionId);
+        return timeline != null && timeline.clientTimestamps;
+    }
+
+    /**
+     * 是否已有时钟偏移估计
+     */
+    public boolean hasClockOffset(String sessionId) {
+        SessionTimeline timeline = timelines.get(sessionId);
+        return timeline != null && timeline.hasClockOffset;
+    }
+
+    /**
+     * 根据一次 ping/pong 往返记录时钟偏移样本
+     * 往返时间越短，样本越可信；历史最短往返时间每次放宽10%，以跟随时钟漂移
+     *
+     * @param serverSentAt 服务端发送ping的时间
+     * @param clientTime 客户端回复pong时的本地时间
+     * @param serverReceivedAt 服务端收到pong的时间
+     */
+    public void recordClockSample(String sessionId, long serverSentAt, long clientTime, long serverReceivedAt) {
+        long rtt = serverReceivedAt - serverSentAt;
+        if (rtt < 0) {
+            return;
+        }
+        SessionTimeline timeline = timeline(sessionId);
+        synchronized (timeline) {
+            timeline.lastRttMs = rtt;
+            long threshold = timeline.hasClockOffset ? timeline.bestRttMs + timeline.bestRttMs / 10 : Long.MAX_VALUE;
+            if (rtt <= threshold) {
+                timeline.bestRttMs = rtt;
+                timeline.clockOffsetMs = clientTime - (serverSentAt + serverReceivedAt) / 2;
+                timeline.hasClockOffset = true;
+            } else {
+                timeline.bestRttMs += timeline.bestRttMs / 10 + 1;
+            }
+        }
+        // 同步到多路复用连接的各通道
+        timelines.forEach((key, channelTimeline) -> {
+            if (channelTimeline != timeline && ChannelKeys.parentSessionId(key).equals(sessionId)) {
+                inheritClockOffset(channelTimeline, timeline);
+            }
+        });
+    }
+
+    /**
+     * 获取会话的延迟时间线（服务端时钟，毫秒）
+     */
+    public Map<String, Object> getTimeline(String sessionId) {
+        SessionTimeline timeline = timelines.get(sessionId);
+        if (timeline == null) {
+            return null;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Map<String, Object>> frames = new ArrayList<>();
+        synchronized (timeline) {
+            result.put("sessionId", sessionId);
+            result.put("clockOffsetMs", timeline.hasClockOffset ? timeline.clockOffsetMs : null);
+            result.put("bestRttMs", timeline.hasClockOffset ? timeline.bestRttMs : null);
+            result.put("lastRttMs", timeline.lastRttMs);
+            result.put("newestSentFrame", timeline.newestSentSequence);
+            result.put("newestResultFrame", timeline.newestResultSequence);
+            for (FrameTrace trace : timeline.traces) {
+                Map<String, Object> frame = new LinkedHashMap<>();
+                frame.put("seq", trace.sequence);
+                frame.put("bytes", trace.bytes);
+                frame.put("capturedAt", trace.captureTimestamp >= 0 && timeline.hasClockOffset
+                        ? toServerTime(timeline, trace.captureTimestamp) : null);
+                frame.put("receivedAt", trace.receivedAt);
+                frame.put("sentAt", trace.sentAt != 0 ? trace.sentAt : null);
+                frame.put("resultAt", trace.resultAt != 0 ? trace.resultAt : null);
+                frames.add(frame);
+            }
+        }
+        result.put("frames", frames);
+        return result;
+    }
+
+    /**
+     * 获取各阶段的延迟直方图
+     */
+    public Map<String, Object> getHistograms() {
+        Map<String, Object> histograms = new LinkedHashMap<>();
+        histograms.put("ingest", ingestHistogram.snapshot());
+        histograms.put("handler", handlerHistogram.snapshot());
+        histograms.put("provider", providerHistogram.snapshot());
+        histograms.put("endToEnd", endToEndHistogram.snapshot());
+        return histograms;
+    }
+
+    /**
+     * 移除会话的时间线
+     */
+    public void removeSession(String sessionId) {
+        timelines.remove(sessionId);
+    }
+
+    private SessionTimeline timeline(String sessionId) {
+        SessionTimeline existing = timelines.get(sessionId);
+        if (existing != null) {
+            return existing;
+        }
+        return timelines.computeIfAbsent(sessionId, id -> {
+            SessionTimeline created = new SessionTimeline();
+            SessionTimeline parent = timelines.get(ChannelKeys.parentSessionId(id));
+            if (parent != null && parent != created) {
+                inheritClockOffset(created, parent);
+            }
+            return created;
+        });
+    }
+
+    private static void inheritClockOffset(SessionTimeline target, SessionTimeline source) {
+        synchronized (source) {
+            if (!source.hasClockOffset) {
+                return;
+            }
+            synchronized (target) {
+                target.clockOffsetMs = source.clockOffsetMs;
+                target.bestRttMs = source.bestRttMs;
+                target.lastRttMs = source.lastRttMs;
+                target.hasClockOffset = true;
+            }
+        }
+    }
+
+    private static long toServerTime(SessionTimeline timeline, long clientTime) {
+        return clientTime - timeline.clockOffsetMs;
+    }
+
+    private static FrameTrace find(SessionTimeline timeline, long sequence) {
+        Iterator<FrameTrace> iterator = timeline.traces.descendingIterator();
+        while (iterator.hasNext()) {
+            FrameTrace trace = iterator.next();
+            if (trace.sequence == sequence) {
+                return trace;
+            }
+        }
+        return null;
+    }
+
+    private static final class SessionTimeline {
+        private final Deque<FrameTrace> traces = new ArrayDeque<>();
+        private long nextServerSequence;
+        private long newestSentSequence = -1;
+        private long newestResultSequence = -1;
+        // 已发送到识别服务的累计字节数，以及当前音频流开始时的累计字节数
+        private long sentBytes;
+        private long streamStartOffset;
+        private volatile boolean clientTimestamps;
+        private volatile boolean hasClockOffset;
+        // 客户端时钟 - 服务端时钟
+        private long clockOffsetMs;
+        private long bestRttMs;
+        private long lastRttMs = -1;
+    }
+
+    private static final class FrameTrace {
+        private final long sequence;
+        private final long captureTimestamp;
+        private final long receivedAt;
+        private final int bytes;
+        private long sentAt;
+        private long resultAt;
+        // 发送该帧后的累计字节数，即该帧末尾在音频流中的位置
+        private long endOffset;
+
+        private FrameTrace(long sequence, long captureTimestamp, long receivedAt, int bytes) {
+            this.sequence = sequence;
+            this.captureTimestamp = captureTimestamp;
+            this.receivedAt = receivedAt;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.speechtranslate.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图
+ * 固定桶边界（毫秒），无锁计数，百分位按桶上界估算，落在最后一个桶时返回-1
+ */
+public class LatencyHistogram {
+
+    private static final long[] BUCKET_BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次延迟，负值（时钟误差）按0处理
+     */
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        int index = 0;
+        while (index < BUCKET_BOUNDS.length && value > BUCKET_BOUNDS[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * 获取直方图快照
+     */
+    public Map<String, Object> snapshot() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        Map<String, Long> bucketCounts = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            bucketCounts.put(i < BUCKET_BOUNDS.length ? "le_" + BUCKET_BOUNDS[i] : "le_inf", counts[i]);
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("meanMs", total > 0 ? sum.sum() / total : 0);
+        snapshot.put("p50Ms", percentile(counts, total, 0.50));
+        snapshot.put("p95Ms", percentile(counts, total, 0.95));
+        snapshot.put("p99Ms", percentile(counts, total, 0.99));
+        snapshot.put("buckets", bucketCounts);
+        return snapshot;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= threshold) {
+                return i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,73 +1,175 @@
 package com.speechtranslate.service;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.UUID;
 
-import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * 会话上下文
  * 用于存储和管理单个会话的转写状态
+ *
+ * 已完成的句子受内存预算约束：超出预算后，较早的句子被写入磁盘片段，
+ * 只有客户端按页请求历史时才逐个片段读回；逐帧返回给客户端的只有增量结果。
  */
-@Data
 public class SessionContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionContext.class);
+
+    // 未指定预算时的默认内存预算（字节）
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 64 * 1024;
+
     // 会话ID
     private final String sessionId;
-    
+
     // 存储最新的中间识别结果
-    private String latestTranscription = "";
-    
-    // 存储所有已完成的句子
-    private final ConcurrentLinkedQueue<String> completedSentences = new ConcurrentLinkedQueue<>();
-    
+    private volatile String latestTranscription = "";
+
+    // 最新的识别结果是否已成为完整句子
+    private volatile boolean latestFinalized;
+
+    // 会话是否已产生过识别结果
+    private volatile boolean resultProduced;
+
+    // 上次返回给客户端的中间结果
+    private String deliveredPartial = "";
+
+    // 驻留在内存中的已完成句子（按时间顺序）
+    private final Deque<String> completedSentences = new ArrayDeque<>();
+
+    // 已溢出到磁盘的片段（按时间顺序）
+    private final List<TranscriptSegment> spilledSegments = new ArrayList<>();
+
+    // 内存预算（字节），超出后将较早的句子溢出到磁盘
+    private final long memoryBudgetBytes;
+
+    // 溢出片段所在目录，为null时不溢出
+    private final Path spillDirectory;
+
+    // 尚未发送给客户端的新句子，每帧取走，引用的字符串同时计入驻留字节数
+    private final List<String> undeliveredSentences = new ArrayList<>();
+
+    // 驻留句子占用的字节数
+    private long residentBytes;
+
+    // 已溢出句子占用的字节数（解压后）
+    private long spilledBytes;
+
+    // 最近一次活动时间
+    private volatile long lastActivityTime = System.currentTimeMillis();
+
     /**
      * 默认构造函数，使用随机UUID作为会话ID
      */
     public SessionContext() {
-        this.sessionId = UUID.randomUUID().toString();
+        this(null);
     }
-    
+
     /**
      * 带会话ID的构造函数
-     * 
+     *
      * @param sessionId 外部传入的会话ID
      */
     public SessionContext(String sessionId) {
+        this(sessionId, DEFAULT_MEMORY_BUDGET_BYTES, null);
+    }
+
+    /**
+     * 带内存预算的构造函数
+     *
+     * @param sessionId 外部传入的会话ID
+     * @param memoryBudgetBytes 已完成句子的内存预算（字节）
+     * @param spillDirectory 溢出片段所在目录，为null时不溢出
+     */
+    public SessionContext(String sessionId, long memoryBudgetBytes, Path spillDirectory) {
         this.sessionId = sessionId != null ? sessionId : UUID.randomUUID().toString();
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
     }
-    
+
     /**
      * 设置最新的中间识别结果
      */
     public void setLatestTranscription(String transcription) {
         this.latestTranscription = transcription != null ? transcription : "";
+        this.latestFinalized = false;
+        if (!this.latestTranscription.isEmpty()) {
+            resultProduced = true;
+        }
+        touch();
     }
-    
+
     /**
      * 添加一个完整的句子到历史记录
      */
-    public void appendTranscription(String transcription) {
+    public synchronized void appendTranscription(String transcription) {
         if (transcription != null && !transcription.isEmpty()) {
-            completedSentences.offer(transcription);
+            completedSentences.offerLast(transcription);
+            undeliveredSentences.add(transcription);
+            residentBytes += estimateBytes(transcription);
+            latestFinalized = true;
+            resultProduced = true;
+            touch();
+            if (residentBytes > memoryBudgetBytes) {
+                spillOldest();
+            }
         }
     }
-    
+
     /**
      * 获取最新的转写结果
      */
     public String getLatestTranscription() {
         return latestTranscription;
     }
-    
+
+    /**
+     * 取走上次调用以来的增量结果：新完成的句子和当前句子的中间结果
+     */
+    public synchronized TranscriptionUpdate drainUpdate() {
+        List<String> sentences = new ArrayList<>(undeliveredSentences);
+        undeliveredSentences.clear();
+        String partial = latestFinalized ? "" : latestTranscription;
+        boolean partialChanged = !partial.equals(deliveredPartial);
+        deliveredPartial = partial;
+        return new TranscriptionUpdate(partial, sentences, partialChanged, resultProduced);
+    }
+
+    /**
+     * 获取历史页数：每个溢出片段一页，最后一页为驻留在内存中的句子
+     */
+    public synchronized int getHistoryPageCount() {
+        return spilledSegments.size() + 1;
+    }
+
     /**
-     * 获取所有已完成的转写结果
+     * 读取一页历史转写
+     * 片段写入后不再修改，在锁外从磁盘读回，不阻塞识别回调线程追加句子；
+     * 新的溢出片段总是追加在末尾，已读取的页号不会改变
+     *
+     * @param page 页号，从0开始
+     * @return 该页的句子，页号越界时返回null
      */
-    public String getFullTranscription() {
-        return completedSentences.stream()
-                .collect(Collectors.joining("\n"));
+    public List<String> readHistoryPage(int page) throws IOException {
+        TranscriptSegment segment;
+        synchronized (this) {
+            if (page < 0 || page > spilledSegments.size()) {
+                return null;
+            }
+            if (page == spilledSegments.size()) {
+                return new ArrayList<>(completedSentences);
+            }
+            segment = spilledSegments.get(page);
+        }
+        return segment.read();
     }
-    
+
     /**
      * 获取会话ID
      * @return 当前会话的唯一标识符
@@ -75,4 +177,91 @@ public class SessionContext {
     public String getSessionId() {
         return sessionId;
     }
-}
\ No newline at end of file
+
+    /**
+     * 记录一次会话活动
+     */
+    public void touch() {
+        lastActivityTime = System.currentTimeMillis();
+    }
+
+    public long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * 释放会话占用的磁盘片段
+     */
+    public synchronized void close() {
+        for (TranscriptSegment segment : spilledSegments) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                logger.warn("删除转写片段 {} 时出错: {}", segment.getFile(), e.getMessage());
+            }
+        }
+        spilledSegments.clear();
+        completedSentences.clear();
+        undeliveredSentences.clear();
+        residentBytes = 0;
+        spilledBytes = 0;
+    }
+
+    /**
+     * 将较早的句子写入新的磁盘片段，直到驻留字节数降到预算的一半
+     * 最新的一句始终保留在内存中
+     */
+    private void spillOldest() {
+        if (spillDirectory == null) {
+            return;
+        }
+        List<String> batch = new ArrayList<>();
+        long batchBytes = 0;
+        while (completedSentences.size() > 1 && residentBytes - batchBytes > memoryBudgetBytes / 2) {
+            String sentence = completedSentences.pollFirst();
+            batch.add(sentence);
+            batchBytes += estimateBytes(sentence);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        Path file = spillDirectory.resolve(sessionId + "-" + spilledSegments.size() + ".seg");
+        try {
+            TranscriptSegment segment = TranscriptSegment.write(file, batch);
+            spilledSegments.add(segment);
+            residentBytes -= batchBytes;
+            spilledBytes += batchBytes;
+            logger.debug("会话 {} 溢出 {} 句 ({} 字节) 到 {}，磁盘占用 {} 字节",
+                    sessionId, batch.size(), batchBytes, file, segment.getDiskBytes());
+        } catch (IOException e) {
+            // 写入失败时将句子放回内存，保证转写不丢失
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                completedSentences.offerFirst(batch.get(i));
+            }
+            logger.error("溢出会话 {} 的转写片段时出错: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * 估算句子在堆中占用的字节数（UTF-16编码）
+     */
+    private static long estimateBytes(String sentence) {
+        return 2L * sentence.length();
+    }
+}
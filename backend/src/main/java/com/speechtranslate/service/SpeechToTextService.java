@@ -1,14 +1,28 @@
 package com.speechtranslate.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.alibaba.nls.client.AccessToken;
@@ -35,26 +49,102 @@ public class SpeechToTextService {
     // 存储每个会话的转写状态
     private final Map<String, SessionContext> sessionContexts = new ConcurrentHashMap<>();
     
+    // 转写结果监听器
+    private final List<TranscriptListener> transcriptListeners = new CopyOnWriteArrayList<>();
+    
     @Autowired
     private TranscriptionRecordRepository transcriptionRecordRepository;
     
+    @Autowired
+    private FrameLatencyTracker frameLatencyTracker;
+    
+    // 每个会话已完成句子的内存预算（字节）
+    @Value("${session.memory-budget-bytes:65536}")
+    private long sessionMemoryBudgetBytes;
+    
+    // 超出预算后转写片段的溢出目录
+    @Value("${session.spill-dir:${java.io.tmpdir}/speechtranslate-spill}")
+    private String sessionSpillDir;
+    
+    // 所属连接已不存在的会话上下文，最后一次活动超过该时间后回收（毫秒）
+    @Value("${session.orphan-timeout-ms:60000}")
+    private long sessionOrphanTimeoutMs;
+    
+    // 判断会话（或通道）所属的WebSocket连接是否仍然打开，由WebSocket处理器注册
+    private volatile Predicate<String> connectionLiveness = sessionId -> false;
+    
+    private Path spillDirectory;
+    
+    /**
+     * 初始化溢出目录，创建失败时会话只保留在内存中
+     * 溢出目录属于本实例，上次运行（崩溃或重启前）遗留的片段文件已无会话引用，启动时删除
+     */
+    @PostConstruct
+    public void initSpillDirectory() {
+        try {
+            spillDirectory = Files.createDirectories(Paths.get(sessionSpillDir));
+            int removed = 0;
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(spillDirectory, "*.seg")) {
+                for (Path file : stale) {
+                    Files.deleteIfExists(file);
+                    removed++;
+                }
+            }
+            logger.info("转写溢出目录: {}，已删除 {} 个遗留片段", spillDirectory, removed);
+        } catch (IOException e) {
+            spillDirectory = null;
+            logger.error("创建转写溢出目录 {} 失败，转写将只保存在内存中: {}", sessionSpillDir, e.getMessage());
+        }
+    }
+    
+    /**
+     * 注册转写结果监听器
+     * 
+     * @param listener 监听器，在转写回调线程上被调用，实现不应阻塞
+     */
+    public void addTranscriptListener(TranscriptListener listener) {
+        transcriptListeners.add(listener);
+    }
+    
+    /**
+     * 注册连接存活判断，回收任务只清理连接已关闭的会话
+     * 
+     * @param liveness 参数为会话ID或通道键，连接仍打开时返回true
+     */
+    public void setConnectionLiveness(Predicate<String> liveness) {
+        this.connectionLiveness = liveness;
+    }
+    
     /**
      * 转写音频数据为文本
      * 
      * @param audioData 音频数据字节数组
      * @param sessionId WebSocket会话ID
-     * @return 转写的文本结果
+     * @return 上次调用以来的增量转写结果
      */
-    public String transcribeAudio(byte[] audioData, String sessionId) {
+    public TranscriptionUpdate transcribeAudio(byte[] audioData, String sessionId) {
+        return transcribeAudio(audioData, sessionId, -1);
+    }
+    
+    /**
+     * 转写音频数据为文本，并记录该帧发送到识别服务的时间
+     * 
+     * @param audioData 音频数据字节数组
+     * @param sessionId WebSocket会话ID
+     * @param frameSequence 帧序号，小于0时不追踪延迟
+     * @return 上次调用以来的增量转写结果
+     */
+    public TranscriptionUpdate transcribeAudio(byte[] audioData, String sessionId, long frameSequence) {
         // 获取或创建会话上下文
         SessionContext context = sessionContexts.computeIfAbsent(sessionId, id -> {
-            SessionContext newContext = new SessionContext(id);
+            SessionContext newContext = new SessionContext(id, sessionMemoryBudgetBytes, spillDirectory);
             return newContext;
         });
+        context.touch();
         
         try {
             // 调用AssemblyAI API进行语音识别
-            String transcription = simulateSTT(audioData, context);
+            String transcription = simulateSTT(audioData, context, frameSequence);
             
             // 如果有新的识别结果，记录并保存
             if (transcription != null && !transcription.isEmpty()) {
@@ -75,14 +165,34 @@ public class SpeechToTextService {
                 logger.debug("使用最新的识别结果: {}", transcription);
             }
             
-            // 返回完整的转写结果
-            return context.getFullTranscription();
+            // 只返回增量结果，完整历史可能已溢出到磁盘，不在每帧读回
+            return context.drainUpdate();
         } catch (Exception e) {
             logger.error("转写音频时出错", e);
             throw new RuntimeException("转写音频失败: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * 读取会话的一页历史转写，已溢出的片段每次只读回一个
+     * 
+     * @param sessionId WebSocket会话ID
+     * @param page 页号，从0开始
+     * @return 该页的句子，会话不存在或页号越界时返回null
+     */
+    public List<String> readHistoryPage(String sessionId, int page) throws IOException {
+        SessionContext context = sessionContexts.get(sessionId);
+        return context != null ? context.readHistoryPage(page) : null;
+    }
+    
+    /**
+     * 获取会话的历史页数，会话不存在时返回0
+     */
+    public int getHistoryPageCount(String sessionId) {
+        SessionContext context = sessionContexts.get(sessionId);
+        return context != null ? context.getHistoryPageCount() : 0;
+    }
+    
     /**
      * 清理会话资源
      * 
@@ -103,18 +213,20 @@ public class SpeechToTextService {
     @Value("${aliyun.nls.url}")
     private String nlsUrl;
     
-    // 存储每个会话的NLS客户端
-    private final Map<String, NlsClient> nlsClients = new ConcurrentHashMap<>();
+    // 存储每个连接的NLS客户端，多路复用连接的各通道共用所属连接的客户端；
+    // 客户端创建需要远程申请令牌，同一连接的其他通道等待同一个future，不阻塞其他连接
+    private final Map<String, CompletableFuture<NlsClient>> nlsClients = new ConcurrentHashMap<>();
     // 存储每个会话的语音转写器
     private final Map<String, SpeechTranscriber> speechTranscribers = new ConcurrentHashMap<>();
 
-    private String simulateSTT(byte[] audioData, SessionContext context) {
+    private String simulateSTT(byte[] audioData, SessionContext context, long frameSequence) {
         try {
             // 获取或创建语音转写器
             SpeechTranscriber transcriber = speechTranscribers.get(context.getSessionId());
             if (transcriber == null) {
                 transcriber = createSpeechTranscriber(context);
                 speechTranscribers.put(context.getSessionId(), transcriber);
+                frameLatencyTracker.markStreamStart(context.getSessionId());
                 
                 // 启动语音转写器
                 transcriber.start();
@@ -125,6 +237,7 @@ public class SpeechToTextService {
             if (audioData.length > 0) {
                 InputStream audioStream = new ByteArrayInputStream(audioData);
                 transcriber.send(audioStream);
+                frameLatencyTracker.markSent(context.getSessionId(), frameSequence, audioData.length);
               //Thread.sleep(50);
                 logger.debug("发送音频数据: {} 字节", audioData.length);
             }
@@ -145,20 +258,9 @@ public class SpeechToTextService {
     
     private SpeechTranscriber createSpeechTranscriber(SessionContext context) {
         try {
-            // 获取或创建NLS客户端
-            NlsClient client = nlsClients.get(context.getSessionId());
-            if (client == null) {
-                // 创建AccessToken
-                AccessToken token = new AccessToken(accessKeyId, accessKeySecret);
-                token.apply();
-                
-                // 创建NLS客户端
-                client = new NlsClient(token.getToken());
-                nlsClients.put(context.getSessionId(), client);
-                logger.info("已创建阿里云NLS客户端，会话ID: {}", context.getSessionId());
-            }
+            NlsClient client = acquireNlsClient(context.getSessionId());
             
-            // 创建语音转写器
+            // 创建语音转写器，每个通道使用独立的转写器
             SpeechTranscriber transcriber = new SpeechTranscriber(client, getTranscriberListener(context));
             
             // 设置参数
@@ -177,6 +279,65 @@ public class SpeechToTextService {
         }
     }
     
+    /**
+     * 获取或创建会话所属连接的NLS客户端
+     * 多路复用连接的各通道按 ChannelKeys.parentSessionId 共用一个客户端和访问令牌
+     */
+    private NlsClient acquireNlsClient(String sessionId) throws IOException {
+        String parentId = ChannelKeys.parentSessionId(sessionId);
+        CompletableFuture<NlsClient> created = new CompletableFuture<>();
+        CompletableFuture<NlsClient> existing = nlsClients.putIfAbsent(parentId, created);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw new IOException("创建阿里云NLS客户端失败，连接ID: " + parentId, e.getCause());
+            }
+        }
+        try {
+            // 创建AccessToken，远程申请令牌在任何锁之外进行
+            AccessToken token = new AccessToken(accessKeyId, accessKeySecret);
+            token.apply();
+            
+            // 创建NLS客户端
+            NlsClient client = new NlsClient(token.getToken());
+            created.complete(client);
+            logger.info("已创建阿里云NLS客户端，连接ID: {}", parentId);
+            return client;
+        } catch (IOException | RuntimeException e) {
+            nlsClients.remove(parentId, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * 当连接及其所有通道都已没有转写器时，关闭连接的NLS客户端
+     */
+    private void releaseNlsClient(String sessionId) {
+        String parentId = ChannelKeys.parentSessionId(sessionId);
+        CompletableFuture<NlsClient> removed = nlsClients.get(parentId);
+        // 正在创建中的客户端属于另一个通道，保留
+        if (removed == null || !removed.isDone()) {
+            return;
+        }
+        boolean inUse = speechTranscribers.keySet().stream()
+                .anyMatch(key -> ChannelKeys.parentSessionId(key).equals(parentId));
+        if (inUse || !nlsClients.remove(parentId, removed) || removed.isCompletedExceptionally()) {
+            return;
+        }
+        NlsClient client = removed.join();
+        if (client != null) {
+            try {
+                // NlsClient没有close方法，使用shutdown方法替代
+                client.shutdown();
+                logger.info("已关闭阿里云NLS客户端，连接ID: {}", parentId);
+            } catch (Exception e) {
+                logger.error("关闭阿里云NLS客户端时出错: {}", e.getMessage());
+            }
+        }
+    }
+    
     private SpeechTranscriberListener getTranscriberListener(final SessionContext context) {
         return new SpeechTranscriberListener() {
             // 识别出中间结果，服务端识别出一个字或词时会返回此消息
@@ -199,6 +360,14 @@ public class SpeechToTextService {
                 String result = response.getTransSentenceText();
                 logger.debug("收到中间转写结果: {}", result);
                 context.setLatestTranscription(result);
+                frameLatencyTracker.markResult(context.getSessionId(), response.getTransSentenceTime());
+                for (TranscriptListener listener : transcriptListeners) {
+                    try {
+                        listener.onPartialResult(context.getSessionId(), result);
+                    } catch (Exception e) {
+                        logger.error("转写监听器处理中间结果时出错: {}", e.getMessage(), e);
+                    }
+                }
             }
             
             // 一句话开始
@@ -214,6 +383,14 @@ public class SpeechToTextService {
                 logger.info("收到最终转写结果: {}", result);
                 context.setLatestTranscription(result);
                 context.appendTranscription(result);
+                frameLatencyTracker.markResult(context.getSessionId(), response.getTransSentenceTime());
+                for (TranscriptListener listener : transcriptListeners) {
+                    try {
+                        listener.onSentenceEnd(context.getSessionId(), result);
+                    } catch (Exception e) {
+                        logger.error("转写监听器处理最终结果时出错: {}", e.getMessage(), e);
+                    }
+                }
             }
             
             // 识别完毕
@@ -254,20 +431,59 @@ public class SpeechToTextService {
             }
         }
         
-        // 关闭NLS客户端
-        NlsClient client = nlsClients.remove(sessionId);
-        if (client != null) {
-            try {
-                // NlsClient没有close方法，使用shutdown方法替代
-                client.shutdown();
-                logger.info("已关闭阿里云NLS客户端，会话ID: {}", sessionId);
-            } catch (Exception e) {
-                logger.error("关闭阿里云NLS客户端时出错: {}", e.getMessage());
-            }
-        }
+        // 连接及其所有通道都已清理时关闭共用的NLS客户端
+        releaseNlsClient(sessionId);
         
-        // 移除会话上下文
-        sessionContexts.remove(sessionId);
+        // 移除会话上下文并删除其溢出片段
+        SessionContext context = sessionContexts.remove(sessionId);
+        if (context != null) {
+            context.close();
+        }
+        frameLatencyTracker.removeSession(sessionId);
         logger.info("已清理会话 {} 的资源", sessionId);
     }
+    
+    /**
+     * 回收孤立会话
+     * 当连接关闭回调未触发时，所属连接已不存在且超过 sessionOrphanTimeoutMs 无活动的会话上下文会被清理，
+     * 并停止其转写器；连接仍打开的会话即使长时间没有音频也不会被回收
+     */
+    @Scheduled(fixedDelayString = "${session.reaper-interval-ms:60000}")
+    public void reapOrphanedSessions() {
+        long now = System.currentTimeMillis();
+        Predicate<String> liveness = connectionLiveness;
+        sessionContexts.forEach((sessionId, context) -> {
+            if (!liveness.test(sessionId) && now - context.getLastActivityTime() > sessionOrphanTimeoutMs) {
+                logger.warn("会话 {} 的连接已不存在且超过 {}ms 无活动，回收其资源", sessionId, sessionOrphanTimeoutMs);
+                cleanupSession(sessionId);
+                // 通知其他组件释放该会话的状态
+                for (TranscriptListener listener : transcriptListeners) {
+                    try {
+                        listener.onSessionReaped(sessionId);
+                    } catch (Exception e) {
+                        logger.error("转写监听器处理会话回收时出错: {}", e.getMessage(), e);
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * 获取本实例的会话内存统计
+     * 
+     * @return 会话数、驻留字节数与溢出字节数
+     */
+    public Map<String, Long> getSessionMemoryStats() {
+        long resident = 0;
+        long spilled = 0;
+        for (SessionContext context : sessionContexts.values()) {
+            resident += context.getResidentBytes();
+            spilled += context.getSpilledBytes();
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sessions", (long) sessionContexts.size());
+        stats.put("residentTranscriptBytes", resident);
+        stats.put("spilledTranscriptBytes", spilled);
+        return stats;
+    }
 }
\ No newline at end of file
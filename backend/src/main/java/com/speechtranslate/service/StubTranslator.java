@@ -0,0 +1,28 @@
+package com.speechtranslate.service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 本地桩翻译器
+ * 不访问外部服务，直接在原文前加上目标语言标记，用于离线测试吞吐量和缓存命中率
+ */
+@Component
+@ConditionalOnProperty(name = "translation.provider", havingValue = "stub", matchIfMissing = true)
+public class StubTranslator implements Translator {
+
+    @Override
+    public List<String> translate(List<String> texts, String sourceLanguage, String targetLanguage) {
+        return texts.stream()
+                .map(text -> "[" + targetLanguage + "] " + text)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+}
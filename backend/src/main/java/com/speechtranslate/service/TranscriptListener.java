@@ -0,0 +1,34 @@
+package com.speechtranslate.service;
+
+/**
+ * 转写结果监听器
+ * 由语音转写回调触发，用于将识别结果分发给其他组件
+ */
+public interface TranscriptListener {
+
+    /**
+     * 收到中间识别结果
+     *
+     * @param sessionId 说话人会话ID
+     * @param text 当前句子的中间结果
+     */
+    default void onPartialResult(String sessionId, String text) {
+    }
+
+    /**
+     * 一句话识别完成
+     *
+     * @param sessionId 说话人会话ID
+     * @param text 最终句子文本
+     */
+    default void onSentenceEnd(String sessionId, String text) {
+    }
+
+    /**
+     * 会话因连接关闭回调未触发而被回收，监听器应释放该会话（或通道）相关的状态
+     *
+     * @param sessionId 被回收的会话ID或通道键
+     */
+    default void onSessionReaped(String sessionId) {
+    }
+}
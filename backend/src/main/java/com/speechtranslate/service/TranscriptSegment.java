@@ -0,0 +1,102 @@
+package com.speechtranslate.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 转写片段
+ * 表示一段已溢出到磁盘的历史句子，文件格式为GZIP压缩的 [句子数][长度+UTF-8字节]...
+ */
+public class TranscriptSegment {
+
+    // 片段文件路径
+    private final Path file;
+
+    // 片段包含的句子数
+    private final int sentenceCount;
+
+    // 句子在内存中占用的字节数（按UTF-8估算）
+    private final long rawBytes;
+
+    // 片段文件在磁盘上的字节数
+    private final long diskBytes;
+
+    private TranscriptSegment(Path file, int sentenceCount, long rawBytes, long diskBytes) {
+        this.file = file;
+        this.sentenceCount = sentenceCount;
+        this.rawBytes = rawBytes;
+        this.diskBytes = diskBytes;
+    }
+
+    /**
+     * 将一组句子写入新的片段文件
+     *
+     * @param file 目标文件
+     * @param sentences 需要溢出的句子，按时间顺序排列
+     * @return 写入完成的片段
+     */
+    public static TranscriptSegment write(Path file, List<String> sentences) throws IOException {
+        long rawBytes = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(sentences.size());
+            for (String sentence : sentences) {
+                byte[] bytes = sentence.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                rawBytes += bytes.length;
+            }
+        }
+        return new TranscriptSegment(file, sentences.size(), rawBytes, Files.size(file));
+    }
+
+    /**
+     * 从磁盘读回片段中的全部句子
+     */
+    public List<String> read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            int count = in.readInt();
+            List<String> sentences = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                sentences.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return sentences;
+        }
+    }
+
+    /**
+     * 删除片段文件
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+}
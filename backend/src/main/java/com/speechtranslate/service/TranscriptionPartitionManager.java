@@ -0,0 +1,367 @@
+package com.speechtranslate.service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 转写记录分区管理
+ * 负责 transcription_records 与 transcription_archives 的建表，
+ * 并按 created_at 以天或月为单位维护 RANGE 分区（MySQL）。
+ * 多个实例共用一个数据库，分区DDL在 MySQL 命名锁（GET_LOCK）保护下执行，同一时间只有一个实例维护分区。
+ */
+@Component
+public class TranscriptionPartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptionPartitionManager.class);
+
+    public static final String RECORDS_TABLE = "transcription_records";
+
+    // 分区维护使用的 MySQL 命名锁
+    public static final String PARTITION_LOCK = "speechtranslate.transcription_records.partitions";
+
+    // MySQL TO_DAYS('1970-01-01') 的值，用于与 LocalDate.toEpochDay() 互相换算
+    private static final long TO_DAYS_EPOCH_OFFSET = 719528;
+
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final String HISTORY_PARTITION = "p_history";
+    private static final DateTimeFormatter PARTITION_NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    /**
+     * 分区粒度
+     */
+    public enum Granularity {
+        DAY, MONTH
+    }
+
+    /**
+     * 一个RANGE分区：包含 created_at 早于 upperBound 的记录
+     */
+    public static class Partition {
+        private final String name;
+        // 上界（不含），MAXVALUE分区为null
+        private final LocalDate upperBound;
+
+        Partition(String name, LocalDate upperBound) {
+            this.name = name;
+            this.upperBound = upperBound;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LocalDate getUpperBound() {
+            return upperBound;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${retention.partition-granularity:DAY}")
+    private Granularity granularity;
+
+    // 提前创建的分区数量
+    @Value("${retention.partitions-ahead:7}")
+    private int partitionsAhead;
+
+    // 启动时是否建表并维护分区
+    @Value("${retention.manage-schema:true}")
+    private boolean manageSchema;
+
+    // 是否将已有的未分区表转换为分区表；转换会锁表，需显式开启并在完成后关闭
+    @Value("${retention.migrate-legacy-table:false}")
+    private boolean migrateLegacyTable;
+
+    public TranscriptionPartitionManager(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!manageSchema) {
+            return;
+        }
+        boolean ran = runExclusively(PARTITION_LOCK, () -> {
+            ensureSchema();
+            ensureFuturePartitions();
+        });
+        if (!ran) {
+            logger.info("其他实例正在维护 {} 的分区，本实例跳过启动时的分区维护", RECORDS_TABLE);
+        }
+    }
+
+    /**
+     * 在 MySQL 命名锁保护下执行操作，锁已被其他实例持有时不等待，直接跳过
+     * 命名锁属于数据库连接，获取与释放在同一个连接上进行，操作本身使用连接池中的其他连接
+     *
+     * @param lockName 锁名
+     * @param work 要执行的操作，其异常会原样抛出
+     * @return 是否获得锁并执行了操作
+     */
+    public boolean runExclusively(String lockName, Runnable work) {
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            JdbcTemplate lockTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            Integer acquired = lockTemplate.queryForObject("SELECT GET_LOCK(?, 0)", Integer.class, lockName);
+            if (acquired == null || acquired != 1) {
+                return false;
+            }
+            try {
+                work.run();
+                return true;
+            } finally {
+                lockTemplate.queryForObject("SELECT RELEASE_LOCK(?)", Integer.class, lockName);
+            }
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+
+    /**
+     * 创建分区表和归档表
+     * 已有的未分区表只在 retention.migrate-legacy-table=true 时转换，转换失败会抛出异常
+     */
+    public void ensureSchema() {
+        LocalDate currentStart = periodStart(LocalDate.now());
+        if (!tableExists(RECORDS_TABLE)) {
+            jdbcTemplate.execute("CREATE TABLE " + RECORDS_TABLE + " ("
+                    + "id BIGINT NOT NULL AUTO_INCREMENT, "
+                    + "session_id VARCHAR(255) NOT NULL, "
+                    + "audio_data LONGBLOB, "
+                    + "transcription_text TEXT, "
+                    + "created_at DATETIME NOT NULL, "
+                    + "PRIMARY KEY (id, created_at), "
+                    + "KEY idx_transcription_records_session (session_id, created_at)"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 "
+                    + initialPartitionClause(currentStart));
+            logger.info("已创建分区表 {}，粒度: {}", RECORDS_TABLE, granularity);
+        } else if (listPartitions().isEmpty()) {
+            if (migrateLegacyTable) {
+                migrateLegacyTable(currentStart);
+            } else {
+                logger.warn("{} 尚未分区，分区维护与按分区保留不会生效；"
+                        + "设置 retention.migrate-legacy-table=true 执行一次性转换（会锁表）", RECORDS_TABLE);
+            }
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS transcription_archives ("
+                + "id BIGINT NOT NULL AUTO_INCREMENT, "
+                + "session_id VARCHAR(255) NOT NULL, "
+                + "record_count INT NOT NULL, "
+                + "first_created_at DATETIME NOT NULL, "
+                + "last_created_at DATETIME NOT NULL, "
+                + "compressed_text LONGBLOB, "
+                + "original_bytes BIGINT NOT NULL, "
+                + "created_at DATETIME NOT NULL, "
+                + "PRIMARY KEY (id), "
+                + "KEY idx_transcription_archives_session (session_id), "
+                + "KEY idx_transcription_archives_last_created (last_created_at)"
+                + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+    }
+
+    /**
+     * 按批删除原始记录已超过保留期限的压缩归档
+     * 归档行只含压缩文本，数量远少于原始记录，按 last_created_at 索引分批删除即可
+     *
+     * @return 删除的归档数
+     */
+    public int purgeArchives(LocalDate cutoff, int batchSize) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("DELETE FROM transcription_archives WHERE last_created_at < ? LIMIT ?",
+                    cutoff.atStartOfDay(), batchSize);
+            total += deleted;
+        } while (deleted >= batchSize);
+        if (total > 0) {
+            logger.info("已删除 {} 条早于 {} 的压缩归档", total, cutoff);
+        }
+        return total;
+    }
+
+    /**
+     * 将未分区的旧表一次性转换为分区表
+     * 主键变更和 PARTITION BY 都会重建并锁定整张表，应在维护窗口内执行
+     */
+    private void migrateLegacyTable(LocalDate currentStart) {
+        logger.warn("开始将 {} 转换为分区表（一次性操作，期间锁表）", RECORDS_TABLE);
+        try {
+            // 分区键必须包含在主键中
+            jdbcTemplate.execute("ALTER TABLE " + RECORDS_TABLE
+                    + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, created_at)");
+            jdbcTemplate.execute("ALTER TABLE " + RECORDS_TABLE + " " + initialPartitionClause(currentStart));
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("转换 " + RECORDS_TABLE + " 为分区表失败: " + e.getMessage(), e);
+        }
+        logger.info("已将 {} 转换为分区表，粒度: {}；可以关闭 retention.migrate-legacy-table", RECORDS_TABLE, granularity);
+    }
+
+    /**
+     * 确保从当前周期起提前 partitionsAhead 个周期的分区已存在
+     * 调用方需持有 PARTITION_LOCK
+     *
+     * @return 新创建的分区数
+     */
+    public int ensureFuturePartitions() {
+        List<Partition> partitions = listPartitions();
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+        LocalDate highest = null;
+        for (Partition partition : partitions) {
+            if (partition.getUpperBound() != null
+                    && (highest == null || partition.getUpperBound().isAfter(highest))) {
+                highest = partition.getUpperBound();
+            }
+        }
+        LocalDate target = nextPeriod(periodStart(LocalDate.now()), partitionsAhead + 1);
+        List<String> definitions = new ArrayList<>();
+        LocalDate start = highest != null ? highest : periodStart(LocalDate.now());
+        while (start.isBefore(target)) {
+            definitions.add(partitionDefinition(start));
+            start = nextPeriod(start, 1);
+        }
+        if (definitions.isEmpty()) {
+            return 0;
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE");
+        jdbcTemplate.execute("ALTER TABLE " + RECORDS_TABLE + " REORGANIZE PARTITION " + FUTURE_PARTITION
+                + " INTO (" + String.join(", ", definitions) + ")");
+        logger.info("已为 {} 新增 {} 个分区", RECORDS_TABLE, definitions.size() - 1);
+        return definitions.size() - 1;
+    }
+
+    /**
+     * 列出所有分区，按上界升序
+     */
+    public List<Partition> listPartitions() {
+        return jdbcTemplate.query(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL "
+                        + "ORDER BY PARTITION_ORDINAL_POSITION",
+                (rs, rowNum) -> {
+                    String description = rs.getString("PARTITION_DESCRIPTION");
+                    LocalDate upperBound = "MAXVALUE".equalsIgnoreCase(description) ? null
+                            : LocalDate.ofEpochDay(Long.parseLong(description) - TO_DAYS_EPOCH_OFFSET);
+                    return new Partition(rs.getString("PARTITION_NAME"), upperBound);
+                },
+                RECORDS_TABLE);
+    }
+
+    /**
+     * 列出所有记录都早于截止日期的分区
+     */
+    public List<Partition> listExpiredPartitions(LocalDate cutoff) {
+        List<Partition> expired = new ArrayList<>();
+        for (Partition partition : listPartitions()) {
+            if (partition.getUpperBound() != null && !partition.getUpperBound().isAfter(cutoff)) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 删除整个分区，元数据操作，不逐行删除
+     */
+    public void dropPartition(Partition partition) {
+        jdbcTemplate.execute("ALTER TABLE " + RECORDS_TABLE + " DROP PARTITION " + partition.getName());
+        logger.info("已删除分区 {} (上界 {})", partition.getName(), partition.getUpperBound());
+    }
+
+    /**
+     * 将分区交换到独立的归档表后删除空分区
+     * 每一步都先检查当前状态，上次运行中途失败后可以安全地重新执行
+     *
+     * @return 归档表名
+     */
+    public String archivePartition(Partition partition) {
+        String archiveTable = RECORDS_TABLE + "_" + partition.getName();
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + archiveTable + " LIKE " + RECORDS_TABLE);
+        if (isPartitioned(archiveTable)) {
+            jdbcTemplate.execute("ALTER TABLE " + archiveTable + " REMOVE PARTITIONING");
+        }
+        boolean partitionHasRows = hasRows(RECORDS_TABLE + " PARTITION (" + partition.getName() + ")");
+        boolean archiveHasRows = hasRows(archiveTable);
+        if (partitionHasRows && archiveHasRows) {
+            // 交换会把归档表中的数据换回分区并随分区一起删除，需人工处理
+            throw new IllegalStateException("分区 " + partition.getName() + " 与归档表 " + archiveTable + " 均有数据");
+        }
+        if (partitionHasRows) {
+            jdbcTemplate.execute("ALTER TABLE " + RECORDS_TABLE + " EXCHANGE PARTITION " + partition.getName()
+                    + " WITH TABLE " + archiveTable);
+        } else {
+            logger.info("分区 {} 已为空，跳过交换", partition.getName());
+        }
+        dropPartition(partition);
+        logger.info("已将分区 {} 归档到 {}", partition.getName(), archiveTable);
+        return archiveTable;
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    private boolean isPartitioned(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.PARTITIONS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    private boolean hasRows(String tableReference) {
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + tableReference + " LIMIT 1)", Integer.class);
+        return exists != null && exists > 0;
+    }
+
+    private boolean tableExists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?",
+                Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    /**
+     * 初始分区：当前周期之前的历史数据、当前及未来若干周期、MAXVALUE兜底分区
+     */
+    private String initialPartitionClause(LocalDate currentStart) {
+        List<String> definitions = new ArrayList<>();
+        definitions.add("PARTITION " + HISTORY_PARTITION + " VALUES LESS THAN (" + toDays(currentStart) + ")");
+        LocalDate start = currentStart;
+        for (int i = 0; i <= partitionsAhead; i++) {
+            definitions.add(partitionDefinition(start));
+            start = nextPeriod(start, 1);
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE");
+        return "PARTITION BY RANGE (TO_DAYS(created_at)) (" + String.join(", ", definitions) + ")";
+    }
+
+    private String partitionDefinition(LocalDate start) {
+        return "PARTITION " + start.format(PARTITION_NAME_FORMAT)
+                + " VALUES LESS THAN (" + toDays(nextPeriod(start, 1)) + ")";
+    }
+
+    private LocalDate periodStart(LocalDate date) {
+        return granularity == Granularity.MONTH ? date.withDayOfMonth(1) : date;
+    }
+
+    private LocalDate nextPeriod(LocalDate start, int periods) {
+        return granularity == Granularity.MONTH ? start.plusMonths(periods) : start.plusDays(periods);
+    }
+
+    private static long toDays(LocalDate date) {
+        return date.toEpochDay() + TO_DAYS_EPOCH_OFFSET;
+    }
+}
@@ -0,0 +1,328 @@
+package com.speechtranslate.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.speechtranslate.entity.TranscriptionArchive;
+import com.speechtranslate.repository.TranscriptionArchiveRepository;
+import com.speechtranslate.repository.TranscriptionRecordRepository;
+
+/**
+ * 转写记录保留策略服务
+ * 定时删除或归档过期分区，并按同一保留期限清理压缩归档；两个任务都按批次限速执行，
+ * 并在独立的线程中运行，不占用其他定时任务共用的调度线程。
+ * 会话压缩默认关闭：它逐行删除原始记录并丢弃音频，只保留压缩文本，需显式开启。
+ */
+@Service
+public class TranscriptionRetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptionRetentionService.class);
+
+    // 压缩任务使用的 MySQL 命名锁，避免多个实例重复压缩同一会话
+    private static final String COMPACTION_LOCK = "speechtranslate.transcription_records.compaction";
+
+    /**
+     * 过期分区的处理方式
+     */
+    public enum RetentionMode {
+        DROP, ARCHIVE
+    }
+
+    private final TranscriptionPartitionManager partitionManager;
+    private final TranscriptionRecordRepository transcriptionRecordRepository;
+    private final TranscriptionArchiveRepository transcriptionArchiveRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${retention.enabled:true}")
+    private boolean enabled;
+
+    // 记录保留天数
+    @Value("${retention.days:90}")
+    private int retentionDays;
+
+    @Value("${retention.mode:DROP}")
+    private RetentionMode retentionMode;
+
+    // 单次运行最多处理的分区数
+    @Value("${retention.max-partitions-per-run:3}")
+    private int maxPartitionsPerRun;
+
+    // 是否启用会话压缩；压缩后原始记录（包括音频）被删除，只保留文本
+    @Value("${retention.compaction.enabled:false}")
+    private boolean compactionEnabled;
+
+    // 会话最后一条记录超过该天数后压缩归档
+    @Value("${retention.compaction.after-days:7}")
+    private int compactionAfterDays;
+
+    // 单次运行最多压缩的会话数
+    @Value("${retention.compaction.max-sessions-per-run:200}")
+    private int maxSessionsPerRun;
+
+    // 压缩时每页读取的记录数
+    @Value("${retention.compaction.page-size:500}")
+    private int compactionPageSize;
+
+    // 相邻两次分区或会话操作之间的暂停时间（毫秒），用于限制IO
+    @Value("${retention.pause-between-operations-ms:500}")
+    private long pauseBetweenOperationsMs;
+
+    // 执行保留与压缩任务的线程，任务中的暂停和DDL不会阻塞调度线程
+    private final ExecutorService retentionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transcription-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean retentionRunning = new AtomicBoolean(false);
+    private final AtomicBoolean compactionRunning = new AtomicBoolean(false);
+
+    private final AtomicLong partitionsCreated = new AtomicLong();
+    private final AtomicLong partitionsDropped = new AtomicLong();
+    private final AtomicLong partitionsArchived = new AtomicLong();
+    private final AtomicLong partitionsPending = new AtomicLong();
+    private final AtomicLong archivesPurged = new AtomicLong();
+    private final AtomicLong sessionsCompacted = new AtomicLong();
+    private final AtomicLong recordsCompacted = new AtomicLong();
+    private final AtomicLong compactedOriginalBytes = new AtomicLong();
+    private final AtomicLong compactedArchiveBytes = new AtomicLong();
+    private final AtomicLong sessionsPending = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LocalDateTime lastRetentionRun;
+    private volatile LocalDateTime lastCompactionRun;
+
+    public TranscriptionRetentionService(TranscriptionPartitionManager partitionManager,
+                                         TranscriptionRecordRepository transcriptionRecordRepository,
+                                         TranscriptionArchiveRepository transcriptionArchiveRepository,
+                                         TransactionTemplate transactionTemplate) {
+        this.partitionManager = partitionManager;
+        this.transcriptionRecordRepository = transcriptionRecordRepository;
+        this.transcriptionArchiveRepository = transcriptionArchiveRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retentionExecutor.shutdownNow();
+    }
+
+    /**
+     * 保留任务：补齐未来分区，然后删除或归档过期分区
+     */
+    @Scheduled(cron = "${retention.cron:0 30 3 * * *}")
+    public void runRetention() {
+        if (!enabled || !retentionRunning.compareAndSet(false, true)) {
+            return;
+        }
+        retentionExecutor.execute(this::retain);
+    }
+
+    private void retain() {
+        try {
+            boolean ran = partitionManager.runExclusively(TranscriptionPartitionManager.PARTITION_LOCK,
+                    this::retainPartitions);
+            if (!ran) {
+                logger.info("其他实例正在维护分区，跳过本次保留任务");
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("执行转写记录保留任务时出错: {}", e.getMessage(), e);
+        } finally {
+            lastRetentionRun = LocalDateTime.now();
+            retentionRunning.set(false);
+        }
+    }
+
+    private void retainPartitions() {
+        partitionsCreated.addAndGet(partitionManager.ensureFuturePartitions());
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+        List<TranscriptionPartitionManager.Partition> expired = partitionManager.listExpiredPartitions(cutoff);
+        partitionsPending.set(expired.size());
+        int processed = 0;
+        for (TranscriptionPartitionManager.Partition partition : expired) {
+            if (processed >= maxPartitionsPerRun) {
+                logger.info("本次已处理 {} 个分区，剩余 {} 个留待下次运行", processed, expired.size() - processed);
+                break;
+            }
+            if (processed > 0) {
+                pause();
+            }
+            if (retentionMode == RetentionMode.ARCHIVE) {
+                partitionManager.archivePartition(partition);
+                partitionsArchived.incrementAndGet();
+            } else {
+                partitionManager.dropPartition(partition);
+                partitionsDropped.incrementAndGet();
+            }
+            partitionsPending.decrementAndGet();
+            processed++;
+        }
+        archivesPurged.addAndGet(partitionManager.purgeArchives(cutoff, compactionPageSize));
+    }
+
+    /**
+     * 压缩任务：将已结束的较早会话合并为一条GZIP压缩的归档记录，并批量删除原记录
+     * 归档只保留文本，原记录中的音频随之丢弃，因此需通过 retention.compaction.enabled 显式开启
+     */
+    @Scheduled(cron = "${retention.compaction.cron:0 0 4 * * *}")
+    public void runCompaction() {
+        if (!enabled || !compactionEnabled || !compactionRunning.compareAndSet(false, true)) {
+            return;
+        }
+        retentionExecutor.execute(this::compact);
+    }
+
+    private void compact() {
+        try {
+            if (!partitionManager.runExclusively(COMPACTION_LOCK, this::compactSessions)) {
+                logger.info("其他实例正在执行压缩任务，跳过本次运行");
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("执行转写记录压缩任务时出错: {}", e.getMessage(), e);
+        } finally {
+            lastCompactionRun = LocalDateTime.now();
+            compactionRunning.set(false);
+        }
+    }
+
+    private void compactSessions() {
+        LocalDateTime cutoff = LocalDate.now().minusDays(compactionAfterDays).atStartOfDay();
+        List<String> sessionIds = transcriptionRecordRepository.findSessionIdsWithRecordsBefore(
+                cutoff, PageRequest.of(0, maxSessionsPerRun));
+        sessionsPending.set(sessionIds.size());
+        for (int i = 0; i < sessionIds.size(); i++) {
+            if (i > 0) {
+                pause();
+            }
+            String sessionId = sessionIds.get(i);
+            try {
+                compactSession(sessionId, cutoff);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                logger.error("压缩会话 {} 时出错: {}", sessionId, e.getMessage(), e);
+            }
+            sessionsPending.decrementAndGet();
+        }
+    }
+
+    /**
+     * 压缩单个会话
+     * 查询已排除仍有新记录的会话，这里再检查一次，跳过查询之后又写入了记录的会话
+     */
+    private void compactSession(String sessionId, LocalDateTime cutoff) {
+        if (transcriptionRecordRepository.existsBySessionIdAndCreatedAtGreaterThanEqual(sessionId, cutoff)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            // 按页读取文本投影并直接写入GZIP流，堆中只保留一页文本和压缩结果
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int recordCount = 0;
+            long originalBytes = 0;
+            LocalDateTime firstCreatedAt = null;
+            LocalDateTime lastCreatedAt = null;
+            try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+                for (int page = 0; ; page++) {
+                    List<TranscriptionRecordRepository.TextView> rows = transcriptionRecordRepository
+                            .findTextBySessionIdBefore(sessionId, cutoff, PageRequest.of(page, compactionPageSize));
+                    for (TranscriptionRecordRepository.TextView row : rows) {
+                        if (firstCreatedAt == null) {
+                            firstCreatedAt = row.getCreatedAt();
+                        }
+                        lastCreatedAt = row.getCreatedAt();
+                        recordCount++;
+                        String value = row.getTranscriptionText();
+                        if (value != null && !value.isEmpty()) {
+                            byte[] text = ((originalBytes > 0 ? "\n" : "") + value).getBytes(StandardCharsets.UTF_8);
+                            out.write(text);
+                            originalBytes += text.length;
+                        }
+                    }
+                    if (rows.size() < compactionPageSize) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("压缩转写文本失败: " + e.getMessage(), e);
+            }
+            if (recordCount == 0) {
+                return;
+            }
+            byte[] compressed = buffer.toByteArray();
+
+            TranscriptionArchive archive = new TranscriptionArchive();
+            archive.setSessionId(sessionId);
+            archive.setRecordCount(recordCount);
+            archive.setFirstCreatedAt(firstCreatedAt);
+            archive.setLastCreatedAt(lastCreatedAt);
+            archive.setCompressedText(compressed);
+            archive.setOriginalBytes(originalBytes);
+            transcriptionArchiveRepository.save(archive);
+
+            int deleted = transcriptionRecordRepository.deleteBySessionIdBefore(sessionId, cutoff);
+            sessionsCompacted.incrementAndGet();
+            recordsCompacted.addAndGet(deleted);
+            compactedOriginalBytes.addAndGet(originalBytes);
+            compactedArchiveBytes.addAndGet(compressed.length);
+            logger.info("已压缩会话 {}: {} 条记录, {} 字节 -> {} 字节", sessionId, deleted, originalBytes, compressed.length);
+        });
+    }
+
+    /**
+     * 获取保留与压缩任务的进度指标
+     */
+    public Map<String, Object> getRetentionStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("granularity", partitionManager.getGranularity());
+        stats.put("mode", retentionMode);
+        stats.put("retentionRunning", retentionRunning.get());
+        stats.put("compactionRunning", compactionRunning.get());
+        stats.put("partitionsCreated", partitionsCreated.get());
+        stats.put("partitionsDropped", partitionsDropped.get());
+        stats.put("partitionsArchived", partitionsArchived.get());
+        stats.put("partitionsPending", partitionsPending.get());
+        stats.put("compactionEnabled", compactionEnabled);
+        stats.put("archivesPurged", archivesPurged.get());
+        stats.put("sessionsCompacted", sessionsCompacted.get());
+        stats.put("recordsCompacted", recordsCompacted.get());
+        stats.put("compactedOriginalBytes", compactedOriginalBytes.get());
+        stats.put("compactedArchiveBytes", compactedArchiveBytes.get());
+        stats.put("sessionsPending", sessionsPending.get());
+        stats.put("failures", failures.get());
+        stats.put("lastRetentionRun", lastRetentionRun != null ? lastRetentionRun.toString() : null);
+        stats.put("lastCompactionRun", lastCompactionRun != null ? lastCompactionRun.toString() : null);
+        return stats;
+    }
+
+    private void pause() {
+        if (pauseBetweenOperationsMs > 0) {
+            try {
+                Thread.sleep(pauseBetweenOperationsMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("保留任务被中断", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.speechtranslate.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 转写增量结果
+ * 每帧只返回新完成的句子和当前句子的中间结果，完整历史由客户端累积
+ */
+public class TranscriptionUpdate {
+
+    // 当前句子的中间结果，句子已完成时为空字符串
+    private final String partial;
+
+    // 上次返回以来新完成的句子
+    private final List<String> sentences;
+
+    // 中间结果与上次返回的是否不同
+    private final boolean partialChanged;
+
+    // 会话是否已产生过任何识别结果
+    private final boolean resultProduced;
+
+    public TranscriptionUpdate(String partial, List<String> sentences, boolean partialChanged, boolean resultProduced) {
+        this.partial = partial != null ? partial : "";
+        this.sentences = sentences != null ? Collections.unmodifiableList(sentences) : Collections.emptyList();
+        this.partialChanged = partialChanged;
+        this.resultProduced = resultProduced;
+    }
+
+    public String getPartial() {
+        return partial;
+    }
+
+    public List<String> getSentences() {
+        return sentences;
+    }
+
+    /**
+     * 是否有需要发送给客户端的变化：新完成的句子或变化了的中间结果
+     */
+    public boolean hasChanges() {
+        return partialChanged || !sentences.isEmpty();
+    }
+
+    public boolean isResultProduced() {
+        return resultProduced;
+    }
+}
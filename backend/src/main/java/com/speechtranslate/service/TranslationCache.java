@@ -0,0 +1,94 @@
+package com.speechtranslate.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 翻译结果缓存
+ * 以 (原文, 源语言, 目标语言) 为键，按最近最少使用淘汰，并在超过存活时间后失效
+ */
+public class TranslationCache {
+
+    // 最大缓存条目数
+    private final int maxEntries;
+
+    // 条目存活时间（毫秒）
+    private final long ttlMillis;
+
+    private final Map<String, Entry> entries;
+
+    private long hits;
+    private long misses;
+
+    public TranslationCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > TranslationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @return 译文，未命中或已过期时返回null
+     */
+    public synchronized String get(String text, String sourceLanguage, String targetLanguage) {
+        String key = key(text, sourceLanguage, targetLanguage);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.translation;
+    }
+
+    /**
+     * 查询缓存但不计入命中统计，用于批量翻译前的复查
+     */
+    public synchronized String peek(String text, String sourceLanguage, String targetLanguage) {
+        Entry entry = entries.get(key(text, sourceLanguage, targetLanguage));
+        return entry == null || entry.expiresAt < System.currentTimeMillis() ? null : entry.translation;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public synchronized void put(String text, String sourceLanguage, String targetLanguage, String translation) {
+        entries.put(key(text, sourceLanguage, targetLanguage),
+                new Entry(translation, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static String key(String text, String sourceLanguage, String targetLanguage) {
+        return sourceLanguage + '\u0000' + targetLanguage + '\u0000' + text;
+    }
+
+    private static final class Entry {
+        private final String translation;
+        private final long expiresAt;
+
+        private Entry(String translation, long expiresAt) {
+            this.translation = translation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.speechtranslate.service;
+
+/**
+ * 翻译结果监听器
+ */
+public interface TranslationListener {
+
+    /**
+     * 一句话翻译完成
+     *
+     * @param sessionId 说话人会话ID
+     * @param targetLanguage 目标语言
+     * @param sourceText 原文
+     * @param translatedText 译文
+     */
+    void onTranslation(String sessionId, String targetLanguage, String sourceText, String translatedText);
+
+    /**
+     * 一句话在重试后仍翻译失败
+     *
+     * @param sessionId 说话人会话ID
+     * @param targetLanguage 目标语言
+     * @param sourceText 原文
+     */
+    default void onTranslationFailed(String sessionId, String targetLanguage, String sourceText) {
+    }
+}
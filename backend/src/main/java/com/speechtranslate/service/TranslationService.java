@@ -0,0 +1,454 @@
+package com.speechtranslate.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 实时翻译服务
+ * 消费每句话的最终转写结果，按目标语言在时间窗口内批量翻译，并将译文推送给监听器。
+ * 定时任务只负责取出批次：上游请求在有界的翻译线程池中执行，译文按说话人连接分派到固定的投递线程，
+ * 慢连接不会拖慢定时任务和其他翻译批次。每个会话的每个目标语言按句子序号投递，
+ * 缓存命中的句子也要等前面未命中的句子完成（或最终失败）后才发出。
+ */
+@Service
+public class TranslationService implements TranscriptListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranslationService.class);
+
+    private final SpeechToTextService speechToTextService;
+    private final Translator translator;
+
+    // 源语言
+    @Value("${translation.source-language:zh}")
+    private String sourceLanguage;
+
+    // 客户端未指定时的默认目标语言，逗号分隔，为空表示不翻译
+    @Value("${translation.default-targets:}")
+    private String defaultTargetsProperty;
+
+    // 单次请求的最大句子数
+    @Value("${translation.max-batch-size:32}")
+    private int maxBatchSize;
+
+    @Value("${translation.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${translation.cache.ttl-ms:3600000}")
+    private long cacheTtlMs;
+
+    // 每句话最多的翻译尝试次数，之后通知监听器翻译失败
+    @Value("${translation.max-attempts:3}")
+    private int maxAttempts;
+
+    // 执行上游翻译请求的线程数
+    @Value("${translation.worker-threads:2}")
+    private int workerThreads;
+
+    // 投递译文的线程数，同一说话人连接固定使用其中一个
+    @Value("${translation.delivery-threads:4}")
+    private int deliveryThreads;
+
+    // 所有目标语言等待翻译的句子总数上限，超出后新句子直接按翻译失败处理
+    @Value("${translation.max-pending-sentences:5000}")
+    private int maxPendingSentences;
+
+    // 翻译线程池中排队的批次数上限，队列满时句子留在待翻译队列中等待下一个时间窗口
+    @Value("${translation.max-queued-batches:32}")
+    private int maxQueuedBatches;
+
+    private ThreadPoolExecutor translationExecutor;
+    private ExecutorService[] deliveryExecutors;
+
+    private List<String> defaultTargets = Collections.emptyList();
+    private TranslationCache cache;
+
+    // 会话ID -> 目标语言
+    private final Map<String, List<String>> sessionTargets = new ConcurrentHashMap<>();
+
+    // 目标语言 -> 等待翻译的句子
+    private final Map<String, Queue<PendingSentence>> pending = new ConcurrentHashMap<>();
+
+    // 等待翻译的句子总数
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // 会话ID -> 目标语言 -> 译文投递顺序
+    private final Map<String, Map<String, SentenceOrder>> orders = new ConcurrentHashMap<>();
+
+    // 翻译结果监听器
+    private final List<TranslationListener> translationListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong upstreamRequests = new AtomicLong();
+    private final AtomicLong upstreamSentences = new AtomicLong();
+    private final AtomicLong upstreamFailures = new AtomicLong();
+    private final AtomicLong deliveredTranslations = new AtomicLong();
+    private final AtomicLong retriedSentences = new AtomicLong();
+    private final AtomicLong failedTranslations = new AtomicLong();
+    private final AtomicLong rejectedSentences = new AtomicLong();
+
+    public TranslationService(SpeechToTextService speechToTextService, Translator translator) {
+        this.speechToTextService = speechToTextService;
+        this.translator = translator;
+    }
+
+    @PostConstruct
+    public void init() {
+        defaultTargets = parseLanguages(defaultTargetsProperty);
+        cache = new TranslationCache(cacheMaxEntries, cacheTtlMs);
+        AtomicInteger workerIndex = new AtomicInteger();
+        translationExecutor = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedBatches), runnable -> {
+                    Thread thread = new Thread(runnable, "translation-worker-" + workerIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        deliveryExecutors = new ExecutorService[deliveryThreads];
+        for (int i = 0; i < deliveryThreads; i++) {
+            String name = "translation-delivery-" + (i + 1);
+            deliveryExecutors[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        speechToTextService.addTranscriptListener(this);
+        logger.info("翻译服务已启动，翻译器: {}，默认目标语言: {}", translator.getName(), defaultTargets);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        translationExecutor.shutdownNow();
+        for (ExecutorService executor : deliveryExecutors) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 注册翻译结果监听器
+     */
+    public void addTranslationListener(TranslationListener listener) {
+        translationListeners.add(listener);
+    }
+
+    /**
+     * 设置会话的目标语言
+     *
+     * @param sessionId 说话人会话ID
+     * @param targetLanguages 目标语言列表，为空时停止翻译该会话
+     */
+    public void setTargetLanguages(String sessionId, List<String> targetLanguages) {
+        List<String> targets = targetLanguages == null ? Collections.emptyList()
+                : targetLanguages.stream()
+                        .map(String::trim)
+                        .filter(language -> !language.isEmpty() && !language.equals(sourceLanguage))
+                        .distinct()
+                        .collect(Collectors.toList());
+        sessionTargets.put(sessionId, targets);
+        logger.info("会话 {} 的翻译目标语言: {}", sessionId, targets);
+    }
+
+    /**
+     * 移除会话的翻译设置，并丢弃该会话尚未翻译或尚未投递的句子
+     */
+    public void removeSession(String sessionId) {
+        sessionTargets.remove(sessionId);
+        Map<String, SentenceOrder> removed = orders.remove(sessionId);
+        if (removed != null) {
+            removed.values().forEach(SentenceOrder::remove);
+        }
+    }
+
+    @Override
+    public void onSessionReaped(String sessionId) {
+        removeSession(sessionId);
+    }
+
+    /**
+     * 获取会话的目标语言，多路复用通道未单独设置时沿用所属连接的设置
+     */
+    private List<String> targetsFor(String sessionId) {
+        List<String> targets = sessionTargets.get(sessionId);
+        if (targets == null) {
+            targets = sessionTargets.get(ChannelKeys.parentSessionId(sessionId));
+        }
+        return targets != null ? targets : defaultTargets;
+    }
+
+    @Override
+    public void onSentenceEnd(String sessionId, String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String target : targetsFor(sessionId)) {
+            SentenceOrder order = orders.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(target, language -> new SentenceOrder(sessionId, target));
+            PendingSentence sentence = new PendingSentence(order, order.nextSequence(), text, 0);
+            String cached = cache.get(text, sourceLanguage, target);
+            if (cached != null) {
+                order.complete(sentence.sequence, text, cached);
+            } else if (pendingCount.get() >= maxPendingSentences) {
+                rejectedSentences.incrementAndGet();
+                logger.warn("待翻译句子已达上限 {}，会话 {} 的句子不再翻译到 {}", maxPendingSentences, sessionId, target);
+                failedTranslations.incrementAndGet();
+                order.complete(sentence.sequence, text, null);
+            } else {
+                enqueue(target, sentence);
+            }
+        }
+    }
+
+    private void enqueue(String target, PendingSentence sentence) {
+        pendingCount.incrementAndGet();
+        pending.computeIfAbsent(target, language -> new ConcurrentLinkedQueue<>()).offer(sentence);
+    }
+
+    private PendingSentence poll(Queue<PendingSentence> queue) {
+        PendingSentence next;
+        while ((next = queue.poll()) != null) {
+            pendingCount.decrementAndGet();
+            // 会话已移除时丢弃
+            if (!next.order.isRemoved()) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按目标语言取出当前时间窗口内积累的句子，交给翻译线程池批量翻译
+     */
+    @Scheduled(fixedDelayString = "${translation.batch-window-ms:300}")
+    public void flush() {
+        pending.forEach((target, queue) -> {
+            // 翻译线程池的队列已满时，剩余句子留到下一个时间窗口
+            while (!queue.isEmpty() && translationExecutor.getQueue().remainingCapacity() > 0) {
+                List<PendingSentence> batch = new ArrayList<>();
+                PendingSentence next;
+                while (batch.size() < maxBatchSize && (next = poll(queue)) != null) {
+                    batch.add(next);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                try {
+                    translationExecutor.execute(() -> translateBatch(target, batch));
+                } catch (RejectedExecutionException e) {
+                    // 投递顺序由序号保证，放回队尾不影响顺序
+                    batch.forEach(sentence -> enqueue(target, sentence));
+                    break;
+                }
+            }
+        });
+    }
+
+    private void translateBatch(String target, List<PendingSentence> batch) {
+        // 同一批次中的重复句子只请求一次，之前批次已翻译的句子直接使用缓存
+        Map<String, String> translations = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (PendingSentence sentence : batch) {
+            String cached = cache.peek(sentence.text, sourceLanguage, target);
+            if (cached != null) {
+                translations.put(sentence.text, cached);
+            } else {
+                missing.add(sentence.text);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<String> texts = new ArrayList<>(missing);
+            try {
+                upstreamRequests.incrementAndGet();
+                upstreamSentences.addAndGet(texts.size());
+                List<String> results = translator.translate(texts, sourceLanguage, target);
+                for (int i = 0; i < texts.size() && i < results.size(); i++) {
+                    cache.put(texts.get(i), sourceLanguage, target, results.get(i));
+                    translations.put(texts.get(i), results.get(i));
+                }
+            } catch (Exception e) {
+                upstreamFailures.incrementAndGet();
+                logger.error("翻译 {} 句到 {} 时出错: {}", texts.size(), target, e.getMessage(), e);
+            }
+        }
+        for (PendingSentence sentence : batch) {
+            String translated = translations.get(sentence.text);
+            if (translated != null) {
+                sentence.order.complete(sentence.sequence, sentence.text, translated);
+            } else {
+                retryOrFail(target, sentence);
+            }
+        }
+    }
+
+    /**
+     * 上游失败或未返回译文的句子重新排队，在下一个时间窗口重试；超过最大尝试次数后通知监听器
+     */
+    private void retryOrFail(String target, PendingSentence sentence) {
+        if (sentence.order.isRemoved()) {
+            return;
+        }
+        if (sentence.attempts + 1 < maxAttempts) {
+            retriedSentences.incrementAndGet();
+            enqueue(target, new PendingSentence(sentence.order, sentence.sequence, sentence.text, sentence.attempts + 1));
+            return;
+        }
+        failedTranslations.incrementAndGet();
+        logger.warn("会话 {} 的句子在 {} 次尝试后仍未能翻译到 {}", sentence.order.sessionId, maxAttempts, target);
+        sentence.order.complete(sentence.sequence, sentence.text, null);
+    }
+
+    /**
+     * 将一句话的结果交给投递线程，translated 为null时通知翻译失败
+     * 由 SentenceOrder 按序号调用，同一连接的投递线程是单线程的，提交顺序即投递顺序
+     */
+    private void dispatch(String sessionId, String target, String text, String translated) {
+        if (translated != null) {
+            deliveredTranslations.incrementAndGet();
+        }
+        deliveryExecutor(sessionId).execute(() -> {
+            for (TranslationListener listener : translationListeners) {
+                try {
+                    if (translated != null) {
+                        listener.onTranslation(sessionId, target, text, translated);
+                    } else {
+                        listener.onTranslationFailed(sessionId, target, text);
+                    }
+                } catch (Exception e) {
+                    logger.error("翻译监听器处理结果时出错: {}", e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 同一说话人连接（包括其各通道）的结果固定由同一个投递线程发送
+     */
+    private ExecutorService deliveryExecutor(String sessionId) {
+        int index = Math.floorMod(ChannelKeys.parentSessionId(sessionId).hashCode(), deliveryExecutors.length);
+        return deliveryExecutors[index];
+    }
+
+    /**
+     * 获取翻译统计
+     *
+     * @return 缓存命中、上游请求等计数
+     */
+    public Map<String, Object> getTranslationStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("translator", translator.getName());
+        stats.put("cacheEntries", cache.size());
+        stats.put("cacheHits", cache.getHits());
+        stats.put("cacheMisses", cache.getMisses());
+        stats.put("upstreamRequests", upstreamRequests.get());
+        stats.put("upstreamSentences", upstreamSentences.get());
+        stats.put("upstreamFailures", upstreamFailures.get());
+        stats.put("deliveredTranslations", deliveredTranslations.get());
+        stats.put("retriedSentences", retriedSentences.get());
+        stats.put("failedTranslations", failedTranslations.get());
+        stats.put("rejectedSentences", rejectedSentences.get());
+        stats.put("pendingSentences", pendingCount.get());
+        stats.put("queuedBatches", translationExecutor.getQueue().size());
+        return stats;
+    }
+
+    private static List<String> parseLanguages(String languages) {
+        if (languages == null || languages.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(languages.split(","))
+                .map(String::trim)
+                .filter(language -> !language.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 一个会话在一个目标语言上的译文顺序
+     * 句子按识别完成的顺序编号，结果（译文或失败）按序号依次交给投递线程，
+     * 前面的句子尚未完成时，后面已完成的句子暂存在 completed 中
+     */
+    private final class SentenceOrder {
+        private final String sessionId;
+        private final String target;
+        private final TreeMap<Long, String[]> completed = new TreeMap<>();
+        private long nextSequence;
+        private long nextToDeliver;
+        private volatile boolean removed;
+
+        private SentenceOrder(String sessionId, String target) {
+            this.sessionId = sessionId;
+            this.target = target;
+        }
+
+        private synchronized long nextSequence() {
+            return nextSequence++;
+        }
+
+        /**
+         * 记录一句话的结果，并按序号投递所有已就绪的结果
+         *
+         * @param translated 译文，为null表示翻译失败
+         */
+        private synchronized void complete(long sequence, String text, String translated) {
+            if (removed) {
+                return;
+            }
+            completed.put(sequence, new String[] {text, translated});
+            String[] next;
+            while ((next = completed.remove(nextToDeliver)) != null) {
+                nextToDeliver++;
+                dispatch(sessionId, target, next[0], next[1]);
+            }
+        }
+
+        private synchronized void remove() {
+            removed = true;
+            completed.clear();
+        }
+
+        private boolean isRemoved() {
+            return removed;
+        }
+    }
+
+    private static final class PendingSentence {
+        private final SentenceOrder order;
+        // 句子在所属会话和目标语言中的序号
+        private final long sequence;
+        private final String text;
+        // 已失败的尝试次数
+        private final int attempts;
+
+        private PendingSentence(SentenceOrder order, long sequence, String text, int attempts) {
+            this.order = order;
+            this.sequence = sequence;
+            this.text = text;
+            this.attempts = attempts;
+        }
+    }
+}
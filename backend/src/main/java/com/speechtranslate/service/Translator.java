@@ -0,0 +1,25 @@
+package com.speechtranslate.service;
+
+import java.util.List;
+
+/**
+ * 翻译器接口
+ * 不同的翻译服务提供商通过实现该接口接入翻译流程
+ */
+public interface Translator {
+
+    /**
+     * 批量翻译句子
+     *
+     * @param texts 待翻译的句子
+     * @param sourceLanguage 源语言代码，例如 zh
+     * @param targetLanguage 目标语言代码，例如 en
+     * @return 与输入顺序一致的译文
+     */
+    List<String> translate(List<String> texts, String sourceLanguage, String targetLanguage);
+
+    /**
+     * 翻译器名称，用于日志和指标
+     */
+    String getName();
+}
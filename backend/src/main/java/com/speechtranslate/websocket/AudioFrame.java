@@ -0,0 +1,65 @@
+package com.speechtranslate.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 音频帧
+ * 客户端发送的二进制消息可带16字节帧头（大端序）：
+ * [0..3] 魔数 "STF1"，[4..7] 帧序号（uint32），[8..15] 采集时间戳（float64，毫秒）
+ * 不带帧头的消息按原始PCM处理，序号由服务端分配
+ */
+public class AudioFrame {
+
+    public static final int HEADER_SIZE = 16;
+    private static final int MAGIC = ('S' << 24) | ('T' << 16) | ('F' << 8) | '1';
+
+    // 帧序号，无帧头时为-1
+    private final long sequence;
+
+    // 客户端采集时间戳（客户端时钟，毫秒），无帧头时为-1
+    private final long captureTimestamp;
+
+    // PCM音频数据
+    private final byte[] audioData;
+
+    private AudioFrame(long sequence, long captureTimestamp, byte[] audioData) {
+        this.sequence = sequence;
+        this.captureTimestamp = captureTimestamp;
+        this.audioData = audioData;
+    }
+
+    /**
+     * 解析二进制消息
+     */
+    public static AudioFrame parse(ByteBuffer buffer) {
+        if (buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC) {
+            buffer.getInt();
+            long sequence = buffer.getInt() & 0xFFFFFFFFL;
+            long captureTimestamp = (long) buffer.getDouble();
+            return new AudioFrame(sequence, captureTimestamp, remaining(buffer));
+        }
+        return new AudioFrame(-1, -1, remaining(buffer));
+    }
+
+    private static byte[] remaining(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    public boolean hasHeader() {
+        return sequence >= 0;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCaptureTimestamp() {
+        return captureTimestamp;
+    }
+
+    public byte[] getAudioData() {
+        return audioData;
+    }
+}
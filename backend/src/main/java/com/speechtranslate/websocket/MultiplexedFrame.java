@@ -0,0 +1,94 @@
+package com.speechtranslate.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多路复用音频消息
+ * 一条二进制消息可携带多个通道的音频（大端序）：
+ * [0..3] 魔数 "STM1"，之后重复 { 通道号（uint16），长度（uint32），音频帧 }
+ * 每个音频帧的格式与 AudioFrame 相同，可带或不带帧头
+ */
+public class MultiplexedFrame {
+
+    private static final int MAGIC = ('S' << 24) | ('T' << 16) | ('M' << 8) | '1';
+    private static final int SUB_HEADER_SIZE = 6;
+
+    /**
+     * 单个通道的音频帧
+     */
+    public static class ChannelFrame {
+        private final int channel;
+        private final AudioFrame frame;
+
+        ChannelFrame(int channel, AudioFrame frame) {
+            this.channel = channel;
+            this.frame = frame;
+        }
+
+        public int getChannel() {
+            return channel;
+        }
+
+        public AudioFrame getFrame() {
+            return frame;
+        }
+    }
+
+    private MultiplexedFrame() {
+    }
+
+    /**
+     * 判断消息是否为多路复用格式
+     */
+    public static boolean isMultiplexed(ByteBuffer buffer) {
+        return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * 拆分多路复用消息
+     *
+     * @throws IllegalArgumentException 消息长度与声明不一致
+     */
+    public static List<ChannelFrame> parse(ByteBuffer buffer) {
+        buffer.getInt();
+        List<ChannelFrame> frames = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < SUB_HEADER_SIZE) {
+                throw new IllegalArgumentException("多路复用帧头不完整");
+            }
+            int channel = buffer.getShort() & 0xFFFF;
+            long length = buffer.getInt() & 0xFFFFFFFFL;
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("通道 " + channel + " 的数据长度超出消息范围");
+            }
+            ByteBuffer slice = buffer.slice();
+            slice.limit((int) length);
+            buffer.position(buffer.position() + (int) length);
+            frames.add(new ChannelFrame(channel, AudioFrame.parse(slice)));
+        }
+        return frames;
+    }
+
+    /**
+     * 编码多路复用消息，供负载生成器等客户端使用
+     *
+     * @param channels 通道号
+     * @param payloads 与通道号一一对应的音频帧
+     */
+    public static byte[] encode(int[] channels, byte[][] payloads) {
+        int size = 4;
+        for (byte[] payload : payloads) {
+            size += SUB_HEADER_SIZE + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        for (int i = 0; i < channels.length; i++) {
+            buffer.putShort((short) channels[i]);
+            buffer.putInt(payloads[i].length);
+            buffer.put(payloads[i]);
+        }
+        return buffer.array();
+    }
+}
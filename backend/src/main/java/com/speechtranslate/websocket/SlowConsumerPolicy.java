@@ -0,0 +1,12 @@
+package com.speechtranslate.websocket;
+
+/**
+ * 慢消费者策略
+ * 订阅者的发送队列已满时的处理方式
+ */
+public enum SlowConsumerPolicy {
+    // 丢弃排队中的中间结果，保留最终结果；仍然放不下最终结果时断开连接
+    DROP_PARTIALS,
+    // 立即断开连接
+    DISCONNECT
+}
@@ -1,64 +1,161 @@
 package com.speechtranslate.websocket;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.speechtranslate.service.ChannelKeys;
+import com.speechtranslate.service.FrameLatencyTracker;
 import com.speechtranslate.service.SpeechToTextService;
+import com.speechtranslate.service.TranscriptListener;
+import com.speechtranslate.service.TranscriptionUpdate;
+import com.speechtranslate.service.TranslationListener;
+import com.speechtranslate.service.TranslationService;
 
 @Component
-public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
+public class SpeechWebSocketHandler extends AbstractWebSocketHandler implements TranslationListener, TranscriptListener {
 
     private static final Logger logger = LoggerFactory.getLogger(SpeechWebSocketHandler.class);
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final SpeechToTextService speechToTextService;
+    private final TranslationService translationService;
+    private final FrameLatencyTracker frameLatencyTracker;
+    private final TranscriptBroadcaster transcriptBroadcaster;
     
-    public SpeechWebSocketHandler(SpeechToTextService speechToTextService) {
+    public SpeechWebSocketHandler(SpeechToTextService speechToTextService, TranslationService translationService,
+                                  FrameLatencyTracker frameLatencyTracker, TranscriptBroadcaster transcriptBroadcaster) {
         this.speechToTextService = speechToTextService;
+        this.translationService = translationService;
+        this.frameLatencyTracker = frameLatencyTracker;
+        this.transcriptBroadcaster = transcriptBroadcaster;
+        translationService.addTranslationListener(this);
+        speechToTextService.setConnectionLiveness(this::isConnectionOpen);
+        speechToTextService.addTranscriptListener(this);
     }
     
     private static final long HEARTBEAT_INTERVAL = 30000; // 30秒心跳间隔
     private static final long HEARTBEAT_TIMEOUT = 60000; // 60秒超时时间
     private static final int MAX_RETRY_ATTEMPTS = 3; // 最大重试次数
+    private static final int SEND_TIME_LIMIT = 5000; // 单次发送最长5秒
+    private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024; // 发送缓冲区上限512KB
+    private static final int CLOCK_SYNC_RETRY_FRAMES = 50; // 尚无时钟偏移估计时，每50帧发送一次带时间戳的ping
     private final Map<String, Integer> retryAttempts = new ConcurrentHashMap<>();
     private final Map<String, Long> lastHeartbeatTimes = new ConcurrentHashMap<>();
+    // 多路复用连接的会话ID -> 已使用的音频通道
+    private final Map<String, Set<Integer>> channelsBySession = new ConcurrentHashMap<>();
+    // 当前存活的心跳线程数
+    private final AtomicInteger liveHeartbeatThreads = new AtomicInteger();
+    
+    // 单个多路复用连接允许的最大通道数
+    @Value("${mux.max-channels:16}")
+    private int maxChannels;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         logger.info("WebSocket连接已建立: {}", session.getId());
-        sessions.put(session.getId(), session);
+        // 包装为并发发送装饰器，心跳线程与消息处理线程可以安全地同时发送
+        WebSocketSession outbound = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT, SEND_BUFFER_SIZE_LIMIT);
+        sessions.put(session.getId(), outbound);
         lastHeartbeatTimes.put(session.getId(), System.currentTimeMillis());
         
+        // 告知客户端其会话ID，供观看端订阅
+        outbound.sendMessage(new TextMessage(objectMapper.writeValueAsString(Map.of("sessionId", session.getId()))));
+        
         // 启动心跳检测线程
         startHeartbeatCheck(session);
     }
     
     @Override
-    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+    protected void handleBinaryMessage(WebSocketSession rawSession, BinaryMessage message) throws Exception {
+        WebSocketSession session = outbound(rawSession);
         ByteBuffer buffer = message.getPayload();
-        byte[] audioData = new byte[buffer.remaining()];
-        buffer.get(audioData);
+        if (MultiplexedFrame.isMultiplexed(buffer)) {
+            handleMultiplexedMessage(session, buffer);
+            return;
+        }
+        processAudioFrame(session, session.getId(), -1, AudioFrame.parse(buffer));
+    }
+    
+    /**
+     * 处理多路复用消息，每个通道使用独立的转写会话
+     */
+    private void handleMultiplexedMessage(WebSocketSession session, ByteBuffer buffer) throws IOException {
+        List<MultiplexedFrame.ChannelFrame> frames;
+        try {
+            frames = MultiplexedFrame.parse(buffer);
+        } catch (IllegalArgumentException e) {
+            logger.warn("无效的多路复用消息: {}, 会话ID: {}", e.getMessage(), session.getId());
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                    Map.of("error", "无效的多路复用消息: " + e.getMessage()))));
+            return;
+        }
+        Set<Integer> channels = channelsBySession.computeIfAbsent(session.getId(), id -> ConcurrentHashMap.newKeySet());
+        for (MultiplexedFrame.ChannelFrame channelFrame : frames) {
+            int channel = channelFrame.getChannel();
+            if (!channels.contains(channel) && channels.size() >= maxChannels) {
+                logger.warn("会话 {} 的通道数已达上限 {}，忽略通道 {}", session.getId(), maxChannels, channel);
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                        Map.of("channel", channel, "error", "通道数已达上限: " + maxChannels))));
+                continue;
+            }
+            channels.add(channel);
+            processAudioFrame(session, ChannelKeys.of(session.getId(), channel), channel, channelFrame.getFrame());
+        }
+    }
+    
+    /**
+     * 转写一帧音频并将结果发送回客户端
+     * 
+     * @param session 客户端连接
+     * @param streamId 转写会话ID，普通连接为连接ID，多路复用连接为通道键
+     * @param channel 通道号，普通连接为-1
+     * @param frame 音频帧
+     */
+    private void processAudioFrame(WebSocketSession session, String streamId, int channel, AudioFrame frame)
+            throws IOException {
+        byte[] audioData = frame.getAudioData();
+        long frameSequence = frameLatencyTracker.markIngest(streamId, frame.getSequence(),
+                frame.getCaptureTimestamp(), audioData.length);
         
-        logger.debug("收到二进制音频数据: {} 字节, 会话ID: {}", audioData.length, session.getId());
+        logger.debug("收到二进制音频数据: {} 字节, 帧序号: {}, 会话ID: {}", audioData.length, frameSequence, streamId);
+        
+        // 客户端带有采集时间戳但尚未估算时钟偏移时，主动发起一次时钟同步
+        if (frame.hasHeader() && !frameLatencyTracker.hasClockOffset(streamId)
+                && frameSequence % CLOCK_SYNC_RETRY_FRAMES == 0) {
+            session.sendMessage(new TextMessage("ping:" + System.currentTimeMillis()));
+        }
         
         // 检查音频数据是否为空或太小
         if (audioData.length == 0) {
-            logger.warn("收到空的音频数据，会话ID: {}", session.getId());
+            logger.warn("收到空的音频数据，会话ID: {}", streamId);
             return;
         } else if (audioData.length < 100) {
-            logger.warn("音频数据太小 ({} 字节)，可能不足以识别，会话ID: {}", audioData.length, session.getId());
+            logger.warn("音频数据太小 ({} 字节)，可能不足以识别，会话ID: {}", audioData.length, streamId);
         }
         
         // 处理音频数据并获取转写结果
@@ -66,35 +163,47 @@ public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
             // 记录开始处理时间，用于性能分析
             long startTime = System.currentTimeMillis();
             
-            String transcription = speechToTextService.transcribeAudio(audioData, session.getId());
+            TranscriptionUpdate update = speechToTextService.transcribeAudio(audioData, streamId, frameSequence);
             
             // 计算处理时间
             long processingTime = System.currentTimeMillis() - startTime;
-            logger.debug("音频处理耗时: {}ms, 会话ID: {}", processingTime, session.getId());
+            logger.debug("音频处理耗时: {}ms, 会话ID: {}", processingTime, streamId);
             
-            // 将转写结果发送回客户端
-            if (transcription != null && !transcription.isEmpty()) {
-                Map<String, String> response = Map.of("transcription", transcription);
+            // 将转写结果发送回客户端，多路复用连接的结果带有通道号
+            Map<String, Object> response = new LinkedHashMap<>();
+            if (channel >= 0) {
+                response.put("channel", channel);
+            }
+            // 只发送新完成的句子和当前中间结果，历史通过 {"history": true, "page": n} 按页请求
+            response.put("partial", update.getPartial());
+            response.put("sentences", update.getSentences());
+            if (update.hasChanges()) {
+                response.put("frame", frameLatencyTracker.getNewestResultFrame(streamId));
                 String jsonResponse = objectMapper.writeValueAsString(response);
                 session.sendMessage(new TextMessage(jsonResponse));
-                logger.info("已发送转写结果: {}", transcription);
+                logger.info("已发送转写结果: {} 句新句子, 中间结果: {}", update.getSentences().size(), update.getPartial());
+            } else if (update.isResultProduced()) {
+                // 结果没有变化，不重复发送
+                logger.debug("转写结果无变化，会话ID: {}", streamId);
             } else {
-                logger.warn("转写结果为空，会话ID: {}", session.getId());
-                Map<String, String> response = Map.of(
-                    "transcription", "",
-                    "message", "未能识别语音内容，请检查麦克风并重试"
-                );
+                logger.warn("转写结果为空，会话ID: {}", streamId);
+                response.put("message", "未能识别语音内容，请检查麦克风并重试");
                 session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
             }
         } catch (Exception e) {
             logger.error("处理音频数据时出错: {}", e.getMessage(), e);
-            Map<String, String> errorResponse = Map.of("error", "处理音频时出错: " + e.getMessage());
+            Map<String, Object> errorResponse = new LinkedHashMap<>();
+            if (channel >= 0) {
+                errorResponse.put("channel", channel);
+            }
+            errorResponse.put("error", "处理音频时出错: " + e.getMessage());
             session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorResponse)));
         }
     }
     
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+    protected void handleTextMessage(WebSocketSession rawSession, TextMessage message) throws Exception {
+        WebSocketSession session = outbound(rawSession);
         String payload = message.getPayload();
         if ("ping".equals(payload)) {
             // 更新心跳时间戳
@@ -105,11 +214,110 @@ public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
             // 客户端响应了我们的ping
             lastHeartbeatTimes.put(session.getId(), System.currentTimeMillis());
             logger.debug("收到客户端pong响应");
+        } else if (payload.startsWith("pong:")) {
+            // 带时间戳的pong: "pong:{服务端ping时间}:{客户端时间}"，用于估算时钟偏移
+            long receivedAt = System.currentTimeMillis();
+            lastHeartbeatTimes.put(session.getId(), receivedAt);
+            handleClockSyncPong(session, payload, receivedAt);
+        } else if (payload.startsWith("{")) {
+            handleControlMessage(session, payload);
         } else {
             logger.info("收到文本消息: {}", payload);
         }
     }
     
+    private void handleClockSyncPong(WebSocketSession session, String payload, long receivedAt) {
+        String[] parts = payload.split(":");
+        if (parts.length != 3) {
+            logger.warn("无效的pong消息: {}, 会话ID: {}", payload, session.getId());
+            return;
+        }
+        try {
+            long serverSentAt = Long.parseLong(parts[1]);
+            long clientTime = (long) Double.parseDouble(parts[2]);
+            frameLatencyTracker.recordClockSample(session.getId(), serverSentAt, clientTime, receivedAt);
+            logger.debug("时钟同步样本: 往返 {}ms, 会话ID: {}", receivedAt - serverSentAt, session.getId());
+        } catch (NumberFormatException e) {
+            logger.warn("无效的pong消息: {}, 会话ID: {}", payload, session.getId());
+        }
+    }
+    
+    /**
+     * 处理客户端的JSON控制消息
+     * 支持 {"translate": ["en", "ja"]} 设置翻译目标语言，
+     * 以及 {"history": true[, "page": n][, "channel": n]} 按页请求历史转写
+     */
+    private void handleControlMessage(WebSocketSession session, String payload) {
+        try {
+            JsonNode node = objectMapper.readTree(payload);
+            JsonNode translate = node.get("translate");
+            if (translate != null && translate.isArray()) {
+                List<String> targets = new ArrayList<>();
+                translate.forEach(language -> targets.add(language.asText()));
+                translationService.setTargetLanguages(session.getId(), targets);
+            } else if (node.path("history").asBoolean(false)) {
+                int channel = node.path("channel").asInt(-1);
+                String streamId = channel >= 0 ? ChannelKeys.of(session.getId(), channel) : session.getId();
+                int page = node.path("page").asInt(0);
+                List<String> sentences = speechToTextService.readHistoryPage(streamId, page);
+                int pageCount = speechToTextService.getHistoryPageCount(streamId);
+                Map<String, Object> response = new LinkedHashMap<>();
+                if (channel >= 0) {
+                    response.put("channel", channel);
+                }
+                response.put("type", "history");
+                response.put("page", page);
+                response.put("sentences", sentences != null ? sentences : Collections.emptyList());
+                // 下一页的页号，已是最后一页时为null
+                response.put("next", sentences != null && page + 1 < pageCount ? page + 1 : null);
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+            } else {
+                logger.info("收到未知控制消息: {}", payload);
+            }
+        } catch (IOException e) {
+            logger.warn("解析控制消息失败: {}, 会话ID: {}", e.getMessage(), session.getId());
+        }
+    }
+    
+    /**
+     * 将译文作为独立消息推送给说话人客户端
+     */
+    @Override
+    public void onTranslation(String sessionId, String targetLanguage, String sourceText, String translatedText) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        int channel = ChannelKeys.channel(sessionId);
+        if (channel >= 0) {
+            response.put("channel", channel);
+        }
+        response.put("type", "translation");
+        response.put("language", targetLanguage);
+        response.put("source", sourceText);
+        response.put("translation", translatedText);
+        try {
+            sendMessageToSession(ChannelKeys.parentSessionId(sessionId), objectMapper.writeValueAsString(response));
+        } catch (IOException e) {
+            logger.error("序列化翻译结果时出错: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onTranslationFailed(String sessionId, String targetLanguage, String sourceText) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        int channel = ChannelKeys.channel(sessionId);
+        if (channel >= 0) {
+            response.put("channel", channel);
+        }
+        response.put("type", "translation_error");
+        response.put("language", targetLanguage);
+        response.put("source", sourceText);
+        response.put("message", "翻译失败，请稍后重试");
+        try {
+            sendMessageToSession(ChannelKeys.parentSessionId(sessionId), objectMapper.writeValueAsString(response));
+        } catch (IOException e) {
+            logger.error("序列化翻译失败通知时出错: {}", e.getMessage());
+        }
+    }
+    
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         logger.error("WebSocket传输错误: {}", exception.getMessage());
@@ -144,10 +352,59 @@ public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
         retryAttempts.remove(session.getId());
         // 清理与此会话相关的资源
         speechToTextService.cleanupSession(session.getId());
+        translationService.removeSession(session.getId());
+        transcriptBroadcaster.closeSubscribers(session.getId());
+        Set<Integer> channels = channelsBySession.remove(session.getId());
+        if (channels != null) {
+            for (Integer channel : channels) {
+                String channelKey = ChannelKeys.of(session.getId(), channel);
+                speechToTextService.cleanupSession(channelKey);
+                translationService.removeSession(channelKey);
+            }
+        }
+    }
+
+    /**
+     * 会话上下文被回收时，连接关闭回调没有触发，清理已关闭连接遗留的连接状态
+     */
+    @Override
+    public void onSessionReaped(String sessionId) {
+        sessions.forEach((id, session) -> {
+            if (!session.isOpen() && sessions.remove(id, session)) {
+                lastHeartbeatTimes.remove(id);
+                retryAttempts.remove(id);
+                channelsBySession.remove(id);
+                translationService.removeSession(id);
+                logger.info("已清理关闭回调未触发的连接 {}", id);
+            }
+        });
+        String parentId = ChannelKeys.parentSessionId(sessionId);
+        if (!sessions.containsKey(parentId)) {
+            lastHeartbeatTimes.remove(parentId);
+            retryAttempts.remove(parentId);
+            channelsBySession.remove(parentId);
+        }
+    }
+
+    /**
+     * 会话或通道键所属的连接是否仍然打开
+     */
+    public boolean isConnectionOpen(String sessionId) {
+        WebSocketSession session = sessions.get(ChannelKeys.parentSessionId(sessionId));
+        return session != null && session.isOpen();
+    }
+
+    /**
+     * 获取会话的并发发送装饰器，会话已移除时返回原始会话
+     */
+    private WebSocketSession outbound(WebSocketSession session) {
+        return sessions.getOrDefault(session.getId(), session);
     }
 
-    private void startHeartbeatCheck(WebSocketSession session) {
+    private void startHeartbeatCheck(WebSocketSession rawSession) {
+        WebSocketSession session = outbound(rawSession);
         new Thread(() -> {
+            liveHeartbeatThreads.incrementAndGet();
             try {
                 // 给客户端一些时间来准备接收心跳
                 Thread.sleep(2000);
@@ -164,8 +421,10 @@ public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
                             session.close(CloseStatus.SESSION_NOT_RELIABLE);
                             break;
                         }
-                        // 主动发送心跳
-                        session.sendMessage(new TextMessage("ping"));
+                        // 主动发送心跳，支持时钟同步的客户端附带服务端时间戳
+                        String ping = frameLatencyTracker.supportsClockSync(session.getId())
+                                ? "ping:" + System.currentTimeMillis() : "ping";
+                        session.sendMessage(new TextMessage(ping));
                         logger.debug("向会话 {} 发送心跳", session.getId());
                     } catch (Exception e) {
                         logger.error("心跳检测出错: {}, 会话ID: {}", e.getMessage(), session.getId());
@@ -174,6 +433,8 @@ public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
                 }
             } catch (Exception e) {
                 logger.error("心跳线程初始化错误: {}", e.getMessage());
+            } finally {
+                liveHeartbeatThreads.decrementAndGet();
             }
         }, "heartbeat-" + session.getId()).start();
     }
@@ -196,14 +457,46 @@ public class SpeechWebSocketHandler extends AbstractWebSocketHandler {
      * 向所有活动会话广播消息
      */
     public void broadcastMessage(String message) {
+        // 消息只构造一次，由各会话的装饰器共享
+        TextMessage textMessage = new TextMessage(message);
         sessions.forEach((id, session) -> {
             if (session.isOpen()) {
                 try {
-                    session.sendMessage(new TextMessage(message));
+                    session.sendMessage(textMessage);
                 } catch (IOException e) {
                     logger.error("广播消息到会话 {} 时出错", id, e);
                 }
             }
         });
     }
-}
\ No newline at end of file
+    
+    /**
+     * 获取连接统计，用于比较多路复用与独立连接的开销
+     * 
+     * @return 连接数、多路复用连接数、音频通道数、存活的心跳线程数与最近一次GC后的堆内存占用
+     */
+    public Map<String, Long> getConnectionStats() {
+        long channels = channelsBySession.values().stream().mapToLong(Set::size).sum();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("connections", (long) sessions.size());
+        stats.put("multiplexedConnections", (long) channelsBySession.size());
+        stats.put("multiplexedChannels", channels);
+        stats.put("heartbeatThreads", (long) liveHeartbeatThreads.get());
+        stats.put("heapUsedAfterGcBytes", heapUsedAfterGc());
+        return stats;
+    }
+
+    /**
+     * 各堆内存池在最近一次GC后的占用之和，不包含上次GC以来分配的垃圾；尚未发生GC的内存池计为0
+     */
+    private static long heapUsedAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+}
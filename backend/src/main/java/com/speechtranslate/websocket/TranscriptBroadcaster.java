@@ -0,0 +1,270 @@
+package com.speechtranslate.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.RemoteEndpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.speechtranslate.service.ChannelKeys;
+import com.speechtranslate.service.FrameLatencyTracker;
+import com.speechtranslate.service.SpeechToTextService;
+import com.speechtranslate.service.TranscriptListener;
+import com.speechtranslate.service.TranslationListener;
+import com.speechtranslate.service.TranslationService;
+
+/**
+ * 转写结果广播器
+ * 将说话人的实时转写和翻译结果分发给所有订阅者，每条结果只序列化一次
+ */
+@Component
+public class TranscriptBroadcaster implements TranscriptListener, TranslationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptBroadcaster.class);
+
+    // Tomcat 阻塞发送（包括关闭帧）超时时间的会话属性
+    private static final String BLOCKING_SEND_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpeechToTextService speechToTextService;
+    private final TranslationService translationService;
+    private final FrameLatencyTracker frameLatencyTracker;
+
+    // 说话人会话ID -> 订阅者集合
+    private final Map<String, Set<TranscriptSubscriber>> subscribers = new ConcurrentHashMap<>();
+
+    // 每个订阅者的发送队列容量
+    @Value("${subscription.queue-capacity:64}")
+    private int queueCapacity;
+
+    // 队列已满时的处理策略
+    @Value("${subscription.slow-consumer-policy:DROP_PARTIALS}")
+    private SlowConsumerPolicy slowConsumerPolicy;
+
+    // 单条消息的发送期限（毫秒），超过后断开订阅者
+    @Value("${subscription.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    // 装饰器内部缓冲区上限（字节）
+    @Value("${subscription.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    // 调度发送和关闭的线程数，异步发送期间不占用线程
+    @Value("${subscription.sender-threads:4}")
+    private int senderThreads;
+
+    private ExecutorService senderExecutor;
+
+    public TranscriptBroadcaster(SpeechToTextService speechToTextService, TranslationService translationService,
+                                 FrameLatencyTracker frameLatencyTracker) {
+        this.speechToTextService = speechToTextService;
+        this.translationService = translationService;
+        this.frameLatencyTracker = frameLatencyTracker;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        senderExecutor = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "transcript-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        speechToTextService.addTranscriptListener(this);
+        translationService.addTranslationListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senderExecutor.shutdownNow();
+    }
+
+    /**
+     * 添加订阅者
+     *
+     * @param speakerSessionId 被订阅的说话人会话ID
+     * @param session 订阅者的WebSocket会话
+     * @return 创建的订阅者
+     */
+    public TranscriptSubscriber subscribe(String speakerSessionId, WebSocketSession session) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit);
+        TranscriptSubscriber subscriber = new TranscriptSubscriber(decorated, queueCapacity, slowConsumerPolicy,
+                senderExecutor, asyncRemote(session), sendTimeLimitMs);
+        subscribers.computeIfAbsent(speakerSessionId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        logger.info("订阅者 {} 已订阅会话 {}", session.getId(), speakerSessionId);
+        return subscriber;
+    }
+
+    /**
+     * 移除订阅者
+     */
+    public void unsubscribe(String speakerSessionId, TranscriptSubscriber subscriber) {
+        subscribers.computeIfPresent(speakerSessionId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+        logger.info("订阅者 {} 已取消订阅会话 {}", subscriber.getSession().getId(), speakerSessionId);
+    }
+
+    /**
+     * 说话人连接关闭时通知并关闭其（包括各通道的）所有订阅者
+     *
+     * @param speakerSessionId 说话人连接的会话ID
+     */
+    public void closeSubscribers(String speakerSessionId) {
+        subscribers.keySet().removeIf(sessionId -> {
+            if (!ChannelKeys.parentSessionId(sessionId).equals(speakerSessionId)) {
+                return false;
+            }
+            Set<TranscriptSubscriber> targets = subscribers.get(sessionId);
+            if (targets != null && !targets.isEmpty()) {
+                TextMessage ended = endedMessage(sessionId);
+                for (TranscriptSubscriber subscriber : targets) {
+                    subscriber.finish(ended, CloseStatus.NORMAL.withReason("speaker disconnected"));
+                }
+                logger.info("会话 {} 已结束，关闭 {} 个订阅者", sessionId, targets.size());
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void onSessionReaped(String sessionId) {
+        closeSubscribers(ChannelKeys.parentSessionId(sessionId));
+    }
+
+    /**
+     * 检查各订阅者正在发送的消息，超过发送期限的订阅者被断开并移除
+     */
+    @Scheduled(fixedDelayString = "${subscription.deadline-check-interval-ms:1000}")
+    public void enforceSendDeadlines() {
+        long now = System.currentTimeMillis();
+        subscribers.forEach((sessionId, targets) -> {
+            for (TranscriptSubscriber subscriber : targets) {
+                if (subscriber.checkSendDeadline(now)) {
+                    unsubscribe(sessionId, subscriber);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onPartialResult(String sessionId, String text) {
+        publish(sessionId, "partial", text, false);
+    }
+
+    @Override
+    public void onSentenceEnd(String sessionId, String text) {
+        publish(sessionId, "final", text, true);
+    }
+
+    @Override
+    public void onTranslation(String sessionId, String targetLanguage, String sourceText, String translatedText) {
+        if (!hasSubscribers(sessionId)) {
+            return;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("sessionId", sessionId);
+        payload.put("type", "translation");
+        payload.put("language", targetLanguage);
+        payload.put("source", sourceText);
+        payload.put("translation", translatedText);
+        publish(sessionId, payload, true);
+    }
+
+    /**
+     * 向会话的所有订阅者发布一条转写结果
+     */
+    public void publish(String sessionId, String type, String text, boolean isFinal) {
+        if (!hasSubscribers(sessionId)) {
+            return;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("sessionId", sessionId);
+        payload.put("type", type);
+        payload.put("transcription", text);
+        payload.put("frame", frameLatencyTracker.getNewestResultFrame(sessionId));
+        publish(sessionId, payload, isFinal);
+    }
+
+    private TextMessage endedMessage(String sessionId) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("sessionId", sessionId);
+        payload.put("type", "ended");
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            return new TextMessage("{\"type\":\"ended\"}");
+        }
+    }
+
+    /**
+     * 获取容器的异步发送端点，并将阻塞发送超时设为发送期限，使关闭帧不会长时间阻塞
+     */
+    private RemoteEndpoint.Async asyncRemote(WebSocketSession session) {
+        if (!(session instanceof NativeWebSocketSession)) {
+            return null;
+        }
+        javax.websocket.Session nativeSession =
+                ((NativeWebSocketSession) session).getNativeSession(javax.websocket.Session.class);
+        if (nativeSession == null) {
+            return null;
+        }
+        nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT_PROPERTY, (long) sendTimeLimitMs);
+        return nativeSession.getAsyncRemote();
+    }
+
+    private boolean hasSubscribers(String sessionId) {
+        Set<TranscriptSubscriber> targets = subscribers.get(sessionId);
+        return targets != null && !targets.isEmpty();
+    }
+
+    private void publish(String sessionId, Map<String, Object> payload, boolean isFinal) {
+        Set<TranscriptSubscriber> targets = subscribers.get(sessionId);
+        if (targets == null) {
+            return;
+        }
+        TextMessage message;
+        try {
+            message = new TextMessage(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            logger.error("序列化转写结果时出错: {}", e.getMessage());
+            return;
+        }
+        for (TranscriptSubscriber subscriber : targets) {
+            if (subscriber.isClosed()) {
+                unsubscribe(sessionId, subscriber);
+            } else {
+                subscriber.offer(message, isFinal);
+            }
+        }
+    }
+
+    /**
+     * 获取每个说话人会话的订阅者数量
+     */
+    public Map<String, Integer> getSubscriberCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        subscribers.forEach((id, set) -> counts.put(id, set.size()));
+        return counts;
+    }
+}
@@ -0,0 +1,263 @@
+package com.speechtranslate.websocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 转写订阅者
+ * 每个订阅者拥有独立的有界发送队列，通过容器的异步发送逐条发出，发送期间不占用线程；
+ * 单条消息超过发送期限仍未完成时断开该订阅者，慢客户端不会阻塞其他订阅者
+ */
+public class TranscriptSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptSubscriber.class);
+
+    // 订阅者的WebSocket会话（已包装为并发发送装饰器）
+    private final WebSocketSession session;
+
+    // 发送队列容量
+    private final int capacity;
+
+    // 队列已满时的处理策略
+    private final SlowConsumerPolicy policy;
+
+    // 调度发送和关闭的线程池
+    private final Executor executor;
+
+    // 容器的异步发送端点，不可用时退回到装饰器的阻塞发送
+    private final RemoteEndpoint.Async asyncRemote;
+
+    // 单条消息的发送期限（毫秒）
+    private final long sendTimeoutMs;
+
+    // 正在发送的消息的开始时间，0表示当前没有发送
+    private volatile long sendStartedAt;
+
+    // 说话人连接关闭后，队列发送完毕时使用的关闭状态
+    private CloseStatus closeAfterDrain;
+
+    // 待发送消息队列
+    private final Deque<OutboundMessage> queue = new ArrayDeque<>();
+
+    // 是否已有发送任务在运行
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    // 因队列已满被丢弃的中间结果数量
+    private final AtomicLong droppedPartials = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public TranscriptSubscriber(WebSocketSession session, int capacity, SlowConsumerPolicy policy, Executor executor,
+                                RemoteEndpoint.Async asyncRemote, long sendTimeoutMs) {
+        this.session = session;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.executor = executor;
+        this.asyncRemote = asyncRemote;
+        this.sendTimeoutMs = sendTimeoutMs;
+        if (asyncRemote != null) {
+            asyncRemote.setSendTimeout(sendTimeoutMs);
+        }
+    }
+
+    /**
+     * 将一条已序列化的消息加入发送队列，不阻塞调用线程
+     *
+     * @param message 共享的消息实例
+     * @param isFinal 是否为最终结果
+     */
+    public void offer(TextMessage message, boolean isFinal) {
+        if (closed) {
+            return;
+        }
+        synchronized (queue) {
+            if (closeAfterDrain != null) {
+                return;
+            }
+            if (queue.size() >= capacity) {
+                if (policy == SlowConsumerPolicy.DISCONNECT) {
+                    disconnect("发送队列已满");
+                    return;
+                }
+                int before = queue.size();
+                queue.removeIf(queued -> !queued.isFinal);
+                droppedPartials.addAndGet(before - queue.size());
+                if (queue.size() >= capacity) {
+                    if (!isFinal) {
+                        droppedPartials.incrementAndGet();
+                        return;
+                    }
+                    disconnect("发送队列已被最终结果占满");
+                    return;
+                }
+            }
+            queue.offerLast(new OutboundMessage(message, isFinal));
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 发送最后一条消息后关闭订阅，用于说话人连接关闭时通知观看端
+     *
+     * @param message 最后一条消息，不受队列容量限制
+     * @param status 发送完毕后使用的关闭状态
+     */
+    public void finish(TextMessage message, CloseStatus status) {
+        if (closed) {
+            return;
+        }
+        synchronized (queue) {
+            if (closeAfterDrain != null) {
+                return;
+            }
+            closeAfterDrain = status;
+            queue.offerLast(new OutboundMessage(message, true));
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 检查正在发送的消息是否已超过发送期限，超过时断开订阅者
+     *
+     * @return 是否已超期
+     */
+    public boolean checkSendDeadline(long now) {
+        long startedAt = sendStartedAt;
+        if (closed || startedAt == 0 || now - startedAt <= sendTimeoutMs) {
+            return false;
+        }
+        disconnect("发送超过 " + sendTimeoutMs + "ms 未完成");
+        return true;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public long getDroppedPartials() {
+        return droppedPartials.get();
+    }
+
+    public boolean isClosed() {
+        return closed || !session.isOpen();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * 发送队列中的消息
+     * 异步发送时每次只发出一条，完成回调再调度下一条，期间 draining 保持为true
+     */
+    private void drain() {
+        try {
+            OutboundMessage next;
+            while (!closed && (next = poll()) != null) {
+                sendStartedAt = System.currentTimeMillis();
+                if (asyncRemote != null) {
+                    asyncRemote.sendText(next.message.getPayload(), this::onSendComplete);
+                    return;
+                }
+                session.sendMessage(next.message);
+                sendStartedAt = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            sendStartedAt = 0;
+            logger.warn("向订阅者 {} 发送消息失败: {}", session.getId(), e.getMessage());
+            disconnect("发送失败");
+        }
+        finishDrain();
+    }
+
+    private void onSendComplete(SendResult result) {
+        sendStartedAt = 0;
+        if (!result.isOK()) {
+            Throwable error = result.getException();
+            logger.warn("向订阅者 {} 发送消息失败: {}", session.getId(), error != null ? error.getMessage() : "未知错误");
+            disconnect("发送失败");
+            finishDrain();
+            return;
+        }
+        executor.execute(this::drain);
+    }
+
+    private void finishDrain() {
+        draining.set(false);
+        boolean pending;
+        CloseStatus closeStatus;
+        synchronized (queue) {
+            pending = !queue.isEmpty();
+            closeStatus = closeAfterDrain;
+        }
+        if (closed) {
+            return;
+        }
+        // 发送任务结束前可能有新消息入队
+        if (pending) {
+            scheduleDrain();
+        } else if (closeStatus != null) {
+            close(closeStatus);
+        }
+    }
+
+    private OutboundMessage poll() {
+        synchronized (queue) {
+            return queue.pollFirst();
+        }
+    }
+
+    private void disconnect(String reason) {
+        if (closed) {
+            return;
+        }
+        logger.warn("断开慢订阅者 {}: {}", session.getId(), reason);
+        close(CloseStatus.POLICY_VIOLATION.withReason(reason));
+    }
+
+    /**
+     * 标记为已关闭并清空队列，实际关闭连接在线程池中执行
+     * 关闭帧需要等待正在进行的异步发送，不能阻塞识别回调、翻译投递等调用线程
+     */
+    private void close(CloseStatus status) {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+        }
+        executor.execute(() -> {
+            try {
+                session.close(status);
+            } catch (IOException e) {
+                logger.debug("关闭订阅者 {} 时出错: {}", session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    private static final class OutboundMessage {
+        private final TextMessage message;
+        private final boolean isFinal;
+
+        private OutboundMessage(TextMessage message, boolean isFinal) {
+            this.message = message;
+            this.isFinal = isFinal;
+        }
+    }
+}
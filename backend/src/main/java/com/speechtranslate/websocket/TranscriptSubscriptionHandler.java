@@ -0,0 +1,69 @@
+package com.speechtranslate.websocket;
+
+import java.net.URI;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * 转写订阅WebSocket处理器
+ * 观看端通过 /speech/subscribe?session={说话人会话ID} 订阅实时转写
+ */
+@Component
+public class TranscriptSubscriptionHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptSubscriptionHandler.class);
+
+    private static final String SUBSCRIBER_ATTRIBUTE = "transcript_subscriber";
+    private static final String SPEAKER_ATTRIBUTE = "speaker_session_id";
+
+    private final TranscriptBroadcaster transcriptBroadcaster;
+
+    public TranscriptSubscriptionHandler(TranscriptBroadcaster transcriptBroadcaster) {
+        this.transcriptBroadcaster = transcriptBroadcaster;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        String speakerSessionId = speakerSessionId(session.getUri());
+        if (speakerSessionId == null || speakerSessionId.isEmpty()) {
+            logger.warn("订阅请求缺少session参数，关闭连接: {}", session.getId());
+            session.close(CloseStatus.BAD_DATA.withReason("missing session parameter"));
+            return;
+        }
+        TranscriptSubscriber subscriber = transcriptBroadcaster.subscribe(speakerSessionId, session);
+        session.getAttributes().put(SUBSCRIBER_ATTRIBUTE, subscriber);
+        session.getAttributes().put(SPEAKER_ATTRIBUTE, speakerSessionId);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        TranscriptSubscriber subscriber = (TranscriptSubscriber) session.getAttributes().get(SUBSCRIBER_ATTRIBUTE);
+        if ("ping".equals(message.getPayload()) && subscriber != null) {
+            // 经由发送队列回复，避免与正在进行的异步发送冲突
+            subscriber.offer(new TextMessage("pong"), true);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        TranscriptSubscriber subscriber = (TranscriptSubscriber) session.getAttributes().get(SUBSCRIBER_ATTRIBUTE);
+        String speakerSessionId = (String) session.getAttributes().get(SPEAKER_ATTRIBUTE);
+        if (subscriber != null && speakerSessionId != null) {
+            transcriptBroadcaster.unsubscribe(speakerSessionId, subscriber);
+        }
+    }
+
+    private static String speakerSessionId(URI uri) {
+        if (uri == null) {
+            return null;
+        }
+        return UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst("session");
+    }
+}
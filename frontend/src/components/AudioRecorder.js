@@ -10,6 +10,21 @@ const BUFFER_SIZE = 4096;
 const CHANNELS = 1;
 const BIT_DEPTH = 16;
 
+// 帧头: 魔数"STF1" + 帧序号(uint32) + 采集时间戳(float64, 毫秒)，大端序
+const FRAME_MAGIC = [0x53, 0x54, 0x46, 0x31];
+const FRAME_HEADER_SIZE = 16;
+
+// 为PCM数据加上帧头，用于服务端追踪每帧的延迟
+const buildFrame = (pcmBuffer, sequence, captureTimestamp) => {
+  const frame = new Uint8Array(FRAME_HEADER_SIZE + pcmBuffer.byteLength);
+  const view = new DataView(frame.buffer);
+  FRAME_MAGIC.forEach((byte, i) => view.setUint8(i, byte));
+  view.setUint32(4, sequence >>> 0);
+  view.setFloat64(8, captureTimestamp);
+  frame.set(new Uint8Array(pcmBuffer), FRAME_HEADER_SIZE);
+  return frame.buffer;
+};
+
 const useStyles = makeStyles((theme) => ({
   recorderContainer: {
     display: 'flex',
@@ -64,6 +79,9 @@ function AudioRecorder({ onTranscriptionUpdate, onRecordingStateChange }) {
   const mediaRecorderRef = useRef(null);
   const audioContextRef = useRef(null);
   const streamRef = useRef(null);
+  const frameSequenceRef = useRef(0);
+  // 服务端只推送增量结果，已完成的句子在本地累积
+  const finalizedTextRef = useRef('');
   
   // 预初始化音频资源
   const prepareAudioResources = async () => {
@@ -143,8 +161,16 @@ function AudioRecorder({ onTranscriptionUpdate, onRecordingStateChange }) {
         webSocketService.setOnMessageCallback((data) => {
           try {
             const parsedData = JSON.parse(data);
-            if (parsedData.transcription) {
-              onTranscriptionUpdate(parsedData.transcription);
+            // 带type的消息（翻译、历史分页等）不是逐帧的增量结果
+            if (!parsedData.type && (parsedData.sentences || parsedData.partial !== undefined)) {
+              (parsedData.sentences || []).forEach((sentence) => {
+                finalizedTextRef.current = finalizedTextRef.current
+                  ? finalizedTextRef.current + '\n' + sentence
+                  : sentence;
+              });
+              const partial = parsedData.partial || '';
+              const separator = finalizedTextRef.current && partial ? '\n' : '';
+              onTranscriptionUpdate(finalizedTextRef.current + separator + partial);
             }
           } catch (err) {
             console.error('解析WebSocket消息时出错:', err);
@@ -154,10 +180,14 @@ function AudioRecorder({ onTranscriptionUpdate, onRecordingStateChange }) {
         // 连接WebSocket
         await webSocketService.connect();
         setIsConnecting(false);
+        frameSequenceRef.current = 0;
+        finalizedTextRef.current = '';
         
         // 处理音频数据
         scriptNode.onaudioprocess = (audioProcessingEvent) => {
           if (webSocketService.isWebSocketConnected()) {
+            // 采集时间取缓冲区结束时刻
+            const captureTimestamp = Date.now();
             const inputData = audioProcessingEvent.inputBuffer.getChannelData(0);
             
             // 将Float32Array转换为Int16Array
@@ -168,8 +198,9 @@ function AudioRecorder({ onTranscriptionUpdate, onRecordingStateChange }) {
               pcmData[i] = s < 0 ? s * 0x8000 : s * 0x7FFF;
             }
             
-            // 发送PCM数据
-            webSocketService.sendAudioData(pcmData.buffer);
+            // 发送带帧头的PCM数据
+            const sequence = frameSequenceRef.current++;
+            webSocketService.sendAudioData(buildFrame(pcmData.buffer, sequence, captureTimestamp));
           }
         };
         
@@ -52,6 +52,11 @@ class WebSocketService {
                         this.ws.send('pong');
                         return;
                     }
+                    // 带服务端时间戳的ping，回传本地时间用于估算时钟偏移
+                    if (typeof event.data === 'string' && event.data.startsWith('ping:')) {
+                        this.ws.send(`pong:${event.data.substring(5)}:${Date.now()}`);
+                        return;
+                    }
                     
                     if (this.onMessageCallback) {
                         this.onMessageCallback(event.data);